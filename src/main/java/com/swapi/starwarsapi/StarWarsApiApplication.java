@@ -1,5 +1,6 @@
 package com.swapi.starwarsapi;
 
+import com.swapi.starwarsapi.config.ReplicaDataSourceConfig;
 import com.swapi.starwarsapi.model.Planet;
 import com.swapi.starwarsapi.model.StarWarsCharacter;
 import com.swapi.starwarsapi.model.Starship;
@@ -11,11 +12,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.Arrays;
 
 @SpringBootApplication
+// outside the transaction interceptor, see ReplicaDataSourceConfig
+@EnableCaching(order = ReplicaDataSourceConfig.CACHE_ORDER)
+@EnableScheduling
 public class StarWarsApiApplication {
 
     private static final Logger log = LoggerFactory.getLogger(StarWarsApiApplication.class);
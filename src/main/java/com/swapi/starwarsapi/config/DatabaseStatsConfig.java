@@ -0,0 +1,75 @@
+package com.swapi.starwarsapi.config;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Hooks into Hibernate that feed RequestDatabaseStats: a statement inspector that sees the sql of every statement,
+ * and a session event listener that counts and times every jdbc execution.
+ * Only registered with app.db.stats.enabled=true, set it to false to run without either of them
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "app.db.stats.enabled", havingValue = "true")
+public class DatabaseStatsConfig {
+
+    /** Registers the hooks on the Hibernate properties
+     * @return customizer that sets the statement inspector and session listener
+     */
+    @Bean
+    public HibernatePropertiesCustomizer databaseStatsCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, (StatementInspector) DatabaseStatsConfig::inspect);
+            // hibernate only takes a class name here and creates one listener per session
+            properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, JdbcTimingListener.class.getName());
+        };
+    }
+
+    private static String inspect(String sql) {
+        RequestDatabaseStats stats = RequestDatabaseStats.current();
+        if (stats != null) {
+            stats.statementPrepared(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Times the jdbc executions of one session. Public with a no-arg constructor for Hibernate to create it
+     */
+    public static class JdbcTimingListener implements SessionEventListener {
+        private long executionStart;
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            executionStart = System.nanoTime();
+        }
+
+        @Override
+        public void jdbcExecuteStatementEnd() {
+            executed();
+        }
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            executionStart = System.nanoTime();
+        }
+
+        @Override
+        public void jdbcExecuteBatchEnd() {
+            executed();
+        }
+
+        private void executed() {
+            RequestDatabaseStats stats = RequestDatabaseStats.current();
+            if (stats != null) {
+                stats.statementExecuted(System.nanoTime() - executionStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.swapi.starwarsapi.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Duration;
+
+/**
+ * Adds the jdbc statements executed and the time spent in the database to every response, as the X-DB-Queries and X-DB-Time-Ms headers,
+ * and logs requests slower than app.db.stats.slow-request-threshold with those numbers.
+ * An endpoint running one query per row it returns shows up as an X-DB-Queries that grows with the page size
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "app.db.stats.enabled", havingValue = "true")
+public class DatabaseStatsFilter extends OncePerRequestFilter {
+    public static final String QUERIES_HEADER = "X-DB-Queries";
+    public static final String TIME_HEADER = "X-DB-Time-Ms";
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseStatsFilter.class);
+
+    @Value("${app.db.stats.slow-request-threshold}")
+    private Duration slowRequestThreshold;
+    @Value("${app.db.stats.slow-statement-threshold}")
+    private Duration slowStatementThreshold;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        RequestDatabaseStats stats = RequestDatabaseStats.start(slowStatementThreshold);
+        StatsHeadersResponse statsResponse = new StatsHeadersResponse(response, stats);
+        try {
+            filterChain.doFilter(request, statsResponse);
+        } finally {
+            RequestDatabaseStats.finish();
+            // responses without a body haven't been committed yet
+            statsResponse.addStatsHeaders();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            if (elapsed.compareTo(slowRequestThreshold) > 0) {
+                logger.warn("Slow request {} {} took {} ms, {} statements, {} ms in the database",
+                        request.getMethod(), request.getRequestURI(), elapsed.toMillis(), stats.getStatements(), stats.getDatabaseMillis());
+            }
+        }
+    }
+
+    /**
+     * Sets the headers right before the body starts, once the response is committed headers can't be added anymore.
+     * Database work done while the body is written, like lazy loading during serialization, isn't in the headers but is in the slow request log
+     */
+    private static class StatsHeadersResponse extends HttpServletResponseWrapper {
+        private final RequestDatabaseStats stats;
+        private boolean headersAdded;
+
+        StatsHeadersResponse(HttpServletResponse response, RequestDatabaseStats stats) {
+            super(response);
+            this.stats = stats;
+        }
+
+        void addStatsHeaders() {
+            if (headersAdded || isCommitted()) {
+                return;
+            }
+            headersAdded = true;
+            setHeader(QUERIES_HEADER, String.valueOf(stats.getStatements()));
+            setHeader(TIME_HEADER, String.valueOf(stats.getDatabaseMillis()));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addStatsHeaders();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addStatsHeaders();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addStatsHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addStatsHeaders();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addStatsHeaders();
+            super.sendError(sc);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.swapi.starwarsapi.config;
+
+import io.micrometer.core.aop.CountedAspect;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Micrometer instrumentation on top of what actuator records by itself.
+ * Actuator already times every controller handler (http.server.requests) and every repository method (spring.data.repository.invocations).
+ * This turns on the @Timed and @Counted annotations of the services, and counts the repository calls of each http request.
+ * The services carry both at class level: every public method is timed under swapi.service,
+ * and its failures are counted by exception type under swapi.service.errors.
+ * Everything is published under /actuator/metrics
+ */
+@Configuration
+@Profile("!reactive")
+public class MetricsConfig implements WebMvcConfigurer {
+    @Autowired
+    private RepositoryCallsPerRequest repositoryCallsPerRequest;
+
+    /** Records the @Timed methods, with class, method and exception tags
+     * @param meterRegistry registry the timers are published to
+     * @return TimedAspect applied to every @Timed bean
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    /** Records the @Counted methods, with class, method and exception tags
+     * @param meterRegistry registry the counters are published to
+     * @return CountedAspect applied to every @Counted bean
+     */
+    @Bean
+    public CountedAspect countedAspect(MeterRegistry meterRegistry) {
+        return new CountedAspect(meterRegistry);
+    }
+
+    /** Adds RepositoryCallsPerRequest to every repository as it is created, the same way actuator attaches its repository metrics
+     * @param repositoryCallsPerRequest listener to add, looked up on first use since post processors are created before other beans
+     * @return BeanPostProcessor that customizes the repository factory beans
+     */
+    @Bean
+    public static BeanPostProcessor repositoryCallsListenerPostProcessor(ObjectProvider<RepositoryCallsPerRequest> repositoryCallsPerRequest) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+                    repositoryFactoryBean.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(
+                            invocation -> repositoryCallsPerRequest.getObject().afterInvocation(invocation)));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(repositoryCallsPerRequest);
+    }
+}
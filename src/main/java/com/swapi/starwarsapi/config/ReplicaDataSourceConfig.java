@@ -0,0 +1,207 @@
+package com.swapi.starwarsapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.SQLException;
+
+/**
+ * Sends read-only transactions to a read replica when app.datasource.replica.url is set.
+ * The proxy hands out a connection only when the first statement runs, by then the transaction has marked it read-only
+ * and it is taken from the replica pool. Everything else, including start-up and schema work, runs on the primary.
+ * Both pools get the spring.datasource.hikari settings, and publish their metrics tagged pool=primary and pool=replica.
+ * A replica lags behind the primary, so nothing it returns may outlive the request in a cache: read-only transactions
+ * only read from the second-level and query caches, and a miss of a @Cacheable service read is moved to the primary by PrimaryCacheFill.
+ * Without a replica none of this is set up, and the cached reads join their caller's transaction like any other read
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty("app.datasource.replica.url")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReplicaDataSourceConfig {
+    // the cache interceptor runs first, see @EnableCaching on StarWarsApiApplication, so only a miss reaches PrimaryCacheFill,
+    // which runs before the transaction interceptor at the lowest precedence, so the read's own transaction joins the one it opens
+    public static final int CACHE_ORDER = Ordered.LOWEST_PRECEDENCE - 2;
+    private static final int CACHE_FILL_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+
+    @Value("${app.datasource.replica.url}")
+    private String replicaUrl;
+
+    /** Pool of connections to the primary, from the spring.datasource properties
+     * @param properties spring.datasource properties
+     * @return the primary's pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /** Pool of connections to the replica, same credentials as the primary
+     * @param properties spring.datasource properties
+     * @return the replica's pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(replicaUrl).build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /** DataSource used by jpa, routes each connection by the read-only flag of its transaction
+     * @param primaryDataSource the primary's pool
+     * @param replicaDataSource the replica's pool
+     * @return proxy that picks the pool when a connection is first used
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    /** Transaction manager jpa uses in place of the auto-configured one, with ReplicaJpaDialect
+     * @param entityManagerFactory the entity manager factory
+     * @param customizers spring.transaction customizers the auto-configured one would get
+     * @return the transaction manager
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                         ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory) {
+            @Override
+            public void afterPropertiesSet() {
+                // takes the entity manager factory's dialect, so ours is set after it
+                super.afterPropertiesSet();
+                this.setJpaDialect(new ReplicaJpaDialect());
+            }
+        };
+        // through the TransactionManager overload like JpaBaseConfiguration, the PlatformTransactionManager one is deprecated
+        customizers.ifAvailable(customizer -> customizer.customize((TransactionManager) transactionManager));
+        return transactionManager;
+    }
+
+    /** Runs the misses of the @Cacheable service reads on the primary
+     * @param transactionManager looked up on the first miss, advisors are created before the transaction manager can be
+     * @return advisor of every @Cacheable method
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor primaryCacheFillAdvisor(ObjectProvider<PlatformTransactionManager> transactionManager) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(null, Cacheable.class, true),
+                new PrimaryCacheFill(transactionManager));
+        advisor.setOrder(CACHE_FILL_ORDER);
+        return advisor;
+    }
+
+    /**
+     * Opens a read-write transaction, which stays on the primary, around a cached read that has none or a read-only one.
+     * A read-only caller's transaction is suspended, its connection if any is the replica's, so the read takes its second connection
+     * from the other pool. A read-write caller is already on the primary and is joined, without asking the pool for a second connection
+     */
+    static class PrimaryCacheFill implements MethodInterceptor {
+        private final ObjectProvider<PlatformTransactionManager> transactionManager;
+
+        PrimaryCacheFill(ObjectProvider<PlatformTransactionManager> transactionManager) {
+            this.transactionManager = transactionManager;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            if (TransactionSynchronizationManager.isActualTransactionActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return invocation.proceed();
+            }
+            TransactionTemplate primary = new TransactionTemplate(transactionManager.getObject(),
+                    new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+            try {
+                return primary.execute(status -> {
+                    try {
+                        return invocation.proceed();
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new UndeclaredThrowableException(e);
+                    }
+                });
+            } catch (UndeclaredThrowableException e) {
+                throw e.getUndeclaredThrowable();
+            }
+        }
+    }
+
+    /**
+     * Keeps rows read from the replica out of the second-level and query caches.
+     * A row cached right after a write evicted it could be the replica's older version, served until the region expires.
+     * Read-only transactions still get hits from the caches, only read-write transactions on the primary fill them
+     */
+    static class ReplicaJpaDialect extends HibernateJpaDialect {
+
+        @Override
+        public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+                throws PersistenceException, SQLException, TransactionException {
+            Object transactionData = super.beginTransaction(entityManager, definition);
+            if (!definition.isReadOnly()) {
+                return transactionData;
+            }
+            // with open-in-view the session outlives the transaction, so its cache mode is put back in cleanupTransaction
+            Session session = entityManager.unwrap(Session.class);
+            CacheMode cacheMode = session.getCacheMode();
+            session.setCacheMode(CacheMode.GET);
+            return new ReplicaTransactionData(transactionData, session, cacheMode);
+        }
+
+        @Override
+        public void cleanupTransaction(Object transactionData) {
+            if (transactionData instanceof ReplicaTransactionData replica) {
+                replica.session().setCacheMode(replica.cacheMode());
+                super.cleanupTransaction(replica.transactionData());
+            } else {
+                super.cleanupTransaction(transactionData);
+            }
+        }
+
+        private record ReplicaTransactionData(Object transactionData, Session session, CacheMode cacheMode) {
+        }
+    }
+}
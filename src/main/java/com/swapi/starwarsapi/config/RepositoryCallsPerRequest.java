@@ -0,0 +1,60 @@
+package com.swapi.starwarsapi.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the repository calls made while serving each http request and records them under swapi.repository.calls,
+ * tagged by http method and uri template. A request whose count grows with the size of its input, like one lookup per starship,
+ * shows up here as a high max and a wide histogram for its uri.
+ * Registered as a repository invocation listener by MetricsConfig, and as an interceptor so the count is recorded when the request completes
+ */
+@Component
+@Profile("!reactive")
+public class RepositoryCallsPerRequest implements RepositoryMethodInvocationListener, HandlerInterceptor {
+    public static final String METRIC = "swapi.repository.calls";
+    private static final String CALLS_ATTRIBUTE = RepositoryCallsPerRequest.class.getName() + ".calls";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public void afterInvocation(RepositoryMethodInvocation invocation) {
+        // repositories called outside of a request, or from the thread streaming an export, aren't counted
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        AtomicInteger calls = (AtomicInteger) attributes.getAttribute(CALLS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (calls == null) {
+            calls = new AtomicInteger();
+            attributes.setAttribute(CALLS_ATTRIBUTE, calls, RequestAttributes.SCOPE_REQUEST);
+        }
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        AtomicInteger calls = (AtomicInteger) request.getAttribute(CALLS_ATTRIBUTE);
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder(METRIC)
+                .description("Repository calls made while serving one http request")
+                .baseUnit("calls")
+                .tag("method", request.getMethod())
+                .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                .register(meterRegistry)
+                .record(calls == null ? 0 : calls.get());
+    }
+}
@@ -0,0 +1,73 @@
+package com.swapi.starwarsapi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Jdbc statements executed and time spent in the database by the http request on the current thread.
+ * Started and finished by DatabaseStatsFilter, fed by the Hibernate hooks in DatabaseStatsConfig.
+ * Work done outside of a request, like the thread streaming an export, has no stats and isn't counted
+ */
+public class RequestDatabaseStats {
+    private static final Logger logger = LoggerFactory.getLogger(RequestDatabaseStats.class);
+    private static final ThreadLocal<RequestDatabaseStats> CURRENT = new ThreadLocal<>();
+
+    private final long slowStatementThresholdNanos;
+    private int statements;
+    private long databaseNanos;
+    private String lastSql;
+
+    private RequestDatabaseStats(Duration slowStatementThreshold) {
+        this.slowStatementThresholdNanos = slowStatementThreshold.toNanos();
+    }
+
+    /** Starts counting for the request on the current thread
+     * @param slowStatementThreshold statements taking longer than this are logged
+     * @return the stats of the request, call finish once the request is done
+     */
+    public static RequestDatabaseStats start(Duration slowStatementThreshold) {
+        RequestDatabaseStats stats = new RequestDatabaseStats(slowStatementThreshold);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /** Stops counting for the request on the current thread */
+    public static void finish() {
+        CURRENT.remove();
+    }
+
+    /** Stats of the request on the current thread
+     * @return the stats, null when the thread isn't serving a request
+     */
+    public static RequestDatabaseStats current() {
+        return CURRENT.get();
+    }
+
+    /** Remembers the sql Hibernate is about to run, so a slow execution can be logged with it
+     * @param sql sql of the statement being prepared
+     */
+    void statementPrepared(String sql) {
+        lastSql = sql;
+    }
+
+    /** Counts one jdbc execution, a whole batch counts once
+     * @param nanos time the execution took
+     */
+    void statementExecuted(long nanos) {
+        statements++;
+        databaseNanos += nanos;
+        if (nanos > slowStatementThresholdNanos) {
+            logger.warn("Slow statement took {} ms: {}", Duration.ofNanos(nanos).toMillis(), lastSql);
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getDatabaseMillis() {
+        return Duration.ofNanos(databaseNanos).toMillis();
+    }
+}
@@ -0,0 +1,80 @@
+package com.swapi.starwarsapi.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache regions for Planet and Starship.
+ * The regions are created up front so their sizes come from application.properties instead of a provider config file.
+ * Every application context gets a cache manager of its own, so several of them can run in one jvm, as tests and benchmarks do
+ */
+@Configuration
+@Profile("!reactive")
+public class SecondLevelCacheConfig {
+    public static final String PLANET_REGION = "galaxy_planet";
+    public static final String STARSHIP_REGION = "starship_master";
+    public static final String PLANET_BY_NAME_REGION = "galaxy_planet.findByName";
+    public static final String STARSHIP_BY_NAME_REGION = "starship_master.findByName";
+
+    @Value("${app.cache.second-level.entity-max-size}")
+    private long entityMaxSize;
+    @Value("${app.cache.second-level.query-max-size}")
+    private long queryMaxSize;
+    @Value("${app.cache.second-level.expire-after-write}")
+    private Duration expireAfterWrite;
+
+    /** Local JCache manager that holds the second-level cache regions
+     * @return CacheManager with every region Hibernate is going to ask for, closed with the application context
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        // the provider's default manager is shared by the whole jvm, a unique uri gets one that only this context creates regions in and closes
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("swapi:second-level-cache:" + UUID.randomUUID()), provider.getDefaultClassLoader());
+        createRegion(cacheManager, PLANET_REGION, entityMaxSize, expireAfterWrite);
+        createRegion(cacheManager, STARSHIP_REGION, entityMaxSize, expireAfterWrite);
+        createRegion(cacheManager, PLANET_BY_NAME_REGION, queryMaxSize, expireAfterWrite);
+        createRegion(cacheManager, STARSHIP_BY_NAME_REGION, queryMaxSize, expireAfterWrite);
+
+        // the update timestamps decide whether a cached query result is stale, so they must never be evicted
+        createRegion(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, null, null);
+        createRegion(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, queryMaxSize, expireAfterWrite);
+        return cacheManager;
+    }
+
+    /** Hands the cache manager above to Hibernate's jcache region factory
+     * @param secondLevelCacheManager CacheManager holding the regions
+     * @return customizer that sets the cache manager on the Hibernate properties
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+    }
+
+    private void createRegion(CacheManager cacheManager, String name, Long maxSize, Duration expireAfterWrite) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (maxSize != null) {
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+        }
+        if (expireAfterWrite != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        }
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(name, configuration);
+    }
+}
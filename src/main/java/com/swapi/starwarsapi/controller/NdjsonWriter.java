@@ -0,0 +1,45 @@
+package com.swapi.starwarsapi.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes entities to a response as newline-delimited json, one line per entity.
+ * Everything goes through a single generator, so nothing but its buffer is kept in memory.
+ */
+class NdjsonWriter<T> implements Consumer<T>, Closeable {
+    private final ObjectWriter writer;
+    private final JsonGenerator generator;
+
+    NdjsonWriter(ObjectMapper objectMapper, OutputStream outputStream) throws IOException {
+        // flushing after every entity would turn each line into its own write on the socket,
+        // the generator's buffer takes care of batching them instead
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.generator = objectMapper.getFactory().createGenerator(outputStream);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void accept(T entity) {
+        try {
+            writer.writeValue(generator, entity);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,28 @@
+package com.swapi.starwarsapi.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+
+/**
+ * Turns a ?sort= on a property the entity doesn't have into a 400 instead of a 500, for every paged endpoint
+ */
+@RestControllerAdvice
+@Profile("!reactive")
+public class PagingExceptionHandler {
+
+    /** Handler for a sort property that doesn't exist
+     * @param e exception thrown by spring data when it builds the order by
+     * @param response response to send the error on, with the same body as the other errors
+     * @throws IOException when the error can't be sent
+     */
+    @ExceptionHandler(PropertyReferenceException.class)
+    public void badSortProperty(PropertyReferenceException e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+    }
+}
@@ -1,15 +1,27 @@
 package com.swapi.starwarsapi.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.CharacterSummary;
+import com.swapi.starwarsapi.dto.PageResponse;
+import com.swapi.starwarsapi.dto.PlanetFilter;
 import com.swapi.starwarsapi.exceptions.ConflictException;
 import com.swapi.starwarsapi.model.Planet;
 import com.swapi.starwarsapi.service.PlanetService;
+import com.swapi.starwarsapi.service.StarWarsCharacterService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.SortDefault;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Optional;
@@ -18,10 +30,15 @@ import java.util.Optional;
  * This is the controller for the /planets uri.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/planets")
 public class PlanetController {
     @Autowired
     private PlanetService planetService;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /** Handler for post / request
      * @param planet The planet entity we are persisting (model.Planet)
@@ -33,12 +50,45 @@ public class PlanetController {
         planetService.save(planet);
     }
 
-    /** Handler for get / request
-     * @return Returns a list of all persisted planets
+    /** Handler for post /batch request
+     * @param planets The planet entities we are persisting, found in request body as an array (model.Planet)
+     * @return Returns one outcome per planet, in request order. A rejected planet doesn't stop the others from being created
+     */
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<Planet> planets) {
+        return planetService.saveAll(planets);
+    }
+
+    /** Handler for get / and get /?page=&size=&sort= request
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @return Returns one page of persisted planets with the total count
+     */
+    // without paging parameters this is the first page of the default size, the whole table is only served by /export
+    @GetMapping(params = "!after")
+    public PageResponse<Planet> findPage(@SortDefault(sort = "id") Pageable pageable) {
+        return PageResponse.of(planetService.findAll(pageable));
+    }
+
+    /** Handler for get /?after=&size= request
+     * @param after The id of the last planet already seen, found in the request's parameters (0 to start from the beginning)
+     * @param pageable The page size, found in the request's parameters. Keyset pages are always ordered by id
+     * @return Returns the next planets after the cursor, and the cursor to request the page after that
+     */
+    @GetMapping(params = "after")
+    public PageResponse<Planet> findAfter(@RequestParam @NotNull @Min(0) int after, Pageable pageable) {
+        return PageResponse.of(planetService.findAllAfter(after, pageable), Planet::getId);
+    }
+
+    /** Handler for get /export request
+     * @return Streams every persisted planet as newline-delimited json, without loading the whole table into memory
      */
-    @GetMapping
-    public List<Planet> findAll() {
-        return planetService.findAll();
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody export() {
+        return outputStream -> {
+            try (NdjsonWriter<Planet> writer = new NdjsonWriter<>(objectMapper, outputStream)) {
+                planetService.exportAll(writer);
+            }
+        };
     }
 
     /** Handler for get /{id} request
@@ -50,6 +100,18 @@ public class PlanetController {
         return planetService.findById(id);
     }
 
+    /** Handler for get /{id}/residents?page=&size=&sort= request
+     * @param id The id of the planet whose residents we are searching for (integer greater than 0)
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @return Returns one page of the id and name of each character living on the planet, with the total count
+     * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
+     */
+    @GetMapping("/{id}/residents")
+    public PageResponse<CharacterSummary> findResidents(@PathVariable @NotNull @Min(1) int id,
+                                                        @SortDefault(sort = "id") Pageable pageable) throws ConflictException {
+        return PageResponse.of(starWarsCharacterService.findByHomePlanetId(id, pageable));
+    }
+
     /** Handler for get /find request
      * @param name The name of the planet we are searching for, found in the request's parameters (String not null, length > 0)
      * @return Returns the Planet if found, null if not
@@ -59,6 +121,27 @@ public class PlanetController {
         return planetService.findByName(name);
     }
 
+    /** Handler for get /search?q=&page=&size= request
+     * @param q The text to look for in the names, found in the request's parameters (String not null, length > 0). Matches prefixes, substrings and similar spellings, case-insensitive
+     * @param pageable The page number and page size, found in the request's parameters (page is zero-based). Results are always ordered by relevance
+     * @return Returns one page of the matching planets, best matches first, with the total count
+     */
+    @GetMapping("/search")
+    public PageResponse<Planet> search(@RequestParam @NotBlank String q, Pageable pageable) {
+        return PageResponse.of(planetService.search(q, pageable));
+    }
+
+    /** Handler for get /filter?climate=&minPopulation=&maxPopulation=&page=&size=&sort= request
+     * @param filter The climate to match and the population range to stay in, found in the request's parameters. Each of them is optional
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc], by population when left out)
+     * @return Returns one page of the matching planets with the total count
+     * @throws BadRequestException Exception thrown when the lower bound of the range is greater than its upper bound
+     */
+    @GetMapping("/filter")
+    public PageResponse<Planet> filter(PlanetFilter filter, @SortDefault(sort = "population") Pageable pageable) throws BadRequestException {
+        return PageResponse.of(planetService.filter(filter, pageable));
+    }
+
     /** Handler for put /{id} request
      * @param id The id of the planet we are modifying (integer greater than 0)
      * @param planet The Planet entity with the attribute values we want to override. Found in request body (model.Planet)
@@ -1,5 +1,9 @@
 package com.swapi.starwarsapi.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.ExpandedCharacter;
+import com.swapi.starwarsapi.dto.PageResponse;
 import com.swapi.starwarsapi.exceptions.ConflictException;
 import com.swapi.starwarsapi.model.StarWarsCharacter;
 import com.swapi.starwarsapi.service.StarWarsCharacterService;
@@ -9,20 +13,30 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.SortDefault;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * This is the controller for the /characters uri.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/characters")
 public class StarWarsCharacterController {
     @Autowired
     private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /** Handler for post / request
      * @param character The character entity we are persisting (model.StarWarsCharacter)
@@ -35,12 +49,70 @@ public class StarWarsCharacterController {
         starWarsCharacterService.save(character);
     }
 
-    /** Handler for get / request
-     * @return Returns a list of all persisted characters
+    /** Handler for post /batch request
+     * @param characters The character entities we are persisting, found in request body as an array (model.StarWarsCharacter)
+     * @return Returns one outcome per character, in request order. A rejected character doesn't stop the others from being created
+     */
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<StarWarsCharacter> characters) {
+        return starWarsCharacterService.saveAll(characters);
+    }
+
+    /** Handler for get / and get /?page=&size=&sort= request
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @return Returns one page of persisted characters with the total count
+     */
+    // without paging parameters this is the first page of the default size, the whole table is only served by /export
+    @GetMapping(params = {"!after", "!expand"})
+    public PageResponse<StarWarsCharacter> findPage(@SortDefault(sort = "id") Pageable pageable) {
+        return PageResponse.of(starWarsCharacterService.findAll(pageable));
+    }
+
+    /** Handler for get /?expand= and get /?page=&size=&sort=&expand= request
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @param expand The references to resolve, found in the request's parameters as a comma-separated list (homePlanet, starships)
+     * @return Returns one page of persisted characters with the requested references embedded, and the total count
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @GetMapping(params = {"expand", "!after"})
+    public PageResponse<ExpandedCharacter> findPage(@SortDefault(sort = "id") Pageable pageable,
+                                                    @RequestParam Set<String> expand) throws BadRequestException {
+        return PageResponse.of(starWarsCharacterService.expand(starWarsCharacterService.findAll(pageable), expand));
+    }
+
+    /** Handler for get /?after=&size= request
+     * @param after The id of the last character already seen, found in the request's parameters (0 to start from the beginning)
+     * @param pageable The page size, found in the request's parameters. Keyset pages are always ordered by id
+     * @return Returns the next characters after the cursor, and the cursor to request the page after that
      */
-    @GetMapping
-    public List<StarWarsCharacter> findAll() {
-        return starWarsCharacterService.findAll();
+    @GetMapping(params = "after")
+    public PageResponse<StarWarsCharacter> findAfter(@RequestParam @NotNull @Min(0) int after, Pageable pageable) {
+        return PageResponse.of(starWarsCharacterService.findAllAfter(after, pageable), StarWarsCharacter::getId);
+    }
+
+    /** Handler for get /?after=&size=&expand= request
+     * @param after The id of the last character already seen, found in the request's parameters (0 to start from the beginning)
+     * @param pageable The page size, found in the request's parameters. Keyset pages are always ordered by id
+     * @param expand The references to resolve, found in the request's parameters as a comma-separated list (homePlanet, starships)
+     * @return Returns the next characters after the cursor with the requested references embedded, and the cursor to request the page after that
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @GetMapping(params = {"after", "expand"})
+    public PageResponse<ExpandedCharacter> findAfter(@RequestParam @NotNull @Min(0) int after, Pageable pageable,
+                                                     @RequestParam Set<String> expand) throws BadRequestException {
+        return PageResponse.of(starWarsCharacterService.expand(starWarsCharacterService.findAllAfter(after, pageable), expand), ExpandedCharacter::id);
+    }
+
+    /** Handler for get /export request
+     * @return Streams every persisted character as newline-delimited json, without loading the whole table into memory
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody export() {
+        return outputStream -> {
+            try (NdjsonWriter<StarWarsCharacter> writer = new NdjsonWriter<>(objectMapper, outputStream)) {
+                starWarsCharacterService.exportAll(writer);
+            }
+        };
     }
 
     /** Handler for get /{id} request
@@ -52,6 +124,18 @@ public class StarWarsCharacterController {
         return starWarsCharacterService.findById(id);
     }
 
+    /** Handler for get /{id}?expand= request
+     * @param id The id of the character we are searching for (integer greater than 0)
+     * @param expand The references to resolve, found in the request's parameters as a comma-separated list (homePlanet, starships)
+     * @return Returns the StarWarsCharacter with the requested references embedded if found, null if not
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @GetMapping(value = "/{id}", params = "expand")
+    public Optional<ExpandedCharacter> findById(@PathVariable @NotNull @Min(1) Integer id,
+                                                @RequestParam Set<String> expand) throws BadRequestException {
+        return starWarsCharacterService.expand(starWarsCharacterService.findById(id), expand);
+    }
+
     /** Handler for get /find request
      * @param name The name of the character we are searching for, found in the request's parameters (String not null, length > 0)
      * @return Returns the StarWarsCharacter if found, null if not
@@ -61,6 +145,58 @@ public class StarWarsCharacterController {
         return starWarsCharacterService.findByName(name);
     }
 
+    /** Handler for get /search?q=&page=&size= request
+     * @param q The text to look for in the names, found in the request's parameters (String not null, length > 0). Matches prefixes, substrings and similar spellings, case-insensitive
+     * @param pageable The page number and page size, found in the request's parameters (page is zero-based). Results are always ordered by relevance
+     * @return Returns one page of the matching characters, best matches first, with the total count
+     */
+    @GetMapping("/search")
+    public PageResponse<StarWarsCharacter> search(@RequestParam @NotBlank String q, Pageable pageable) {
+        return PageResponse.of(starWarsCharacterService.search(q, pageable));
+    }
+
+    /** Handler for get /find?expand= request
+     * @param name The name of the character we are searching for, found in the request's parameters (String not null, length > 0)
+     * @param expand The references to resolve, found in the request's parameters as a comma-separated list (homePlanet, starships)
+     * @return Returns the StarWarsCharacter with the requested references embedded if found, null if not
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @GetMapping(value = "/find", params = "expand")
+    public Optional<ExpandedCharacter> findByName(@RequestParam @NotBlank String name,
+                                                  @RequestParam Set<String> expand) throws BadRequestException {
+        return starWarsCharacterService.expand(starWarsCharacterService.findByName(name), expand);
+    }
+
+    /** Handler for get /query/all request
+     * @param starships The ids of the starships, found in the request's parameters as a comma-separated list (integers greater than 0)
+     * @return Returns the ids of the characters that fly every one of the starships, ascending
+     * @throws BadRequestException Exception thrown for an empty list or an id that isn't positive
+     */
+    @GetMapping("/query/all")
+    public int[] findIdsFlyingAll(@RequestParam List<Integer> starships) throws BadRequestException {
+        return starWarsCharacterService.findIdsFlyingAll(starships);
+    }
+
+    /** Handler for get /query/any request
+     * @param starships The ids of the starships, found in the request's parameters as a comma-separated list (integers greater than 0)
+     * @return Returns the ids of the characters that fly at least one of the starships, ascending
+     * @throws BadRequestException Exception thrown for an empty list or an id that isn't positive
+     */
+    @GetMapping("/query/any")
+    public int[] findIdsFlyingAny(@RequestParam List<Integer> starships) throws BadRequestException {
+        return starWarsCharacterService.findIdsFlyingAny(starships);
+    }
+
+    /** Handler for get /query/pilot-counts request
+     * @param starships The ids of the starships to count, found in the request's parameters as a comma-separated list. Optional, every starship with a pilot when left out
+     * @return Returns the number of characters flying each starship, keyed by starship id
+     * @throws BadRequestException Exception thrown for an id that isn't positive
+     */
+    @GetMapping("/query/pilot-counts")
+    public Map<Integer, Integer> countPilots(@RequestParam(required = false) List<Integer> starships) throws BadRequestException {
+        return starWarsCharacterService.countPilots(starships);
+    }
+
     /** Handler for put / request
      * @param character The StarWarsCharacter entity with the attribute values we want to override. Found in request body (model.StarWarsCharacter)
      * @throws BadRequestException Exception thrown for custom request body validation
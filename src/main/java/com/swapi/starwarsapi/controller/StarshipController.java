@@ -1,7 +1,13 @@
 package com.swapi.starwarsapi.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.PageResponse;
+import com.swapi.starwarsapi.dto.StarshipFilter;
 import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
 import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.service.StarWarsCharacterService;
 import com.swapi.starwarsapi.service.StarshipService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
@@ -9,8 +15,13 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.SortDefault;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Optional;
@@ -19,10 +30,15 @@ import java.util.Optional;
  * This is the controller for the /planets uri.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/starships")
 public class StarshipController {
     @Autowired
     private StarshipService starshipService;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /** Handler for post / request
      * @param starship The starship entity we are persisting (model.Starship)
@@ -35,12 +51,45 @@ public class StarshipController {
         starshipService.save(starship);
     }
 
-    /** Handler for get / request
-     * @return Returns a list of all persisted starships
+    /** Handler for post /batch request
+     * @param starships The starship entities we are persisting, found in request body as an array (model.Starship)
+     * @return Returns one outcome per starship, in request order. A rejected starship doesn't stop the others from being created
+     */
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<Starship> starships) {
+        return starshipService.saveAll(starships);
+    }
+
+    /** Handler for get / and get /?page=&size=&sort= request
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @return Returns one page of persisted starships with the total count
+     */
+    // without paging parameters this is the first page of the default size, the whole table is only served by /export
+    @GetMapping(params = "!after")
+    public PageResponse<Starship> findPage(@SortDefault(sort = "id") Pageable pageable) {
+        return PageResponse.of(starshipService.findAll(pageable));
+    }
+
+    /** Handler for get /?after=&size= request
+     * @param after The id of the last starship already seen, found in the request's parameters (0 to start from the beginning)
+     * @param pageable The page size, found in the request's parameters. Keyset pages are always ordered by id
+     * @return Returns the next starships after the cursor, and the cursor to request the page after that
+     */
+    @GetMapping(params = "after")
+    public PageResponse<Starship> findAfter(@RequestParam @NotNull @Min(0) int after, Pageable pageable) {
+        return PageResponse.of(starshipService.findAllAfter(after, pageable), Starship::getId);
+    }
+
+    /** Handler for get /export request
+     * @return Streams every persisted starship as newline-delimited json, without loading the whole table into memory
      */
-    @GetMapping
-    public List<Starship> findAll() {
-        return starshipService.findAll();
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody export() {
+        return outputStream -> {
+            try (NdjsonWriter<Starship> writer = new NdjsonWriter<>(objectMapper, outputStream)) {
+                starshipService.exportAll(writer);
+            }
+        };
     }
 
     /** Handler for get /{id} request
@@ -52,6 +101,18 @@ public class StarshipController {
         return starshipService.findById(id);
     }
 
+    /** Handler for get /{id}/pilots?page=&size=&sort= request
+     * @param id The id of the starship whose pilots we are searching for (integer greater than 0)
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc])
+     * @return Returns one page of the characters that fly the starship, with the total count
+     * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
+     */
+    @GetMapping("/{id}/pilots")
+    public PageResponse<StarWarsCharacter> findPilots(@PathVariable @NotNull @Min(1) int id,
+                                                      @SortDefault(sort = "id") Pageable pageable) throws ConflictException {
+        return PageResponse.of(starWarsCharacterService.findByStarshipId(id, pageable));
+    }
+
     /** Handler for get /find request
      * @param name The name of the starship we are searching for, found in the request's parameters (String not null, length > 0)
      * @return Returns the Starship if found, null if not
@@ -61,6 +122,27 @@ public class StarshipController {
         return starshipService.findByName(name);
     }
 
+    /** Handler for get /search?q=&page=&size= request
+     * @param q The text to look for in the names, found in the request's parameters (String not null, length > 0). Matches prefixes, substrings and similar spellings, case-insensitive
+     * @param pageable The page number and page size, found in the request's parameters (page is zero-based). Results are always ordered by relevance
+     * @return Returns one page of the matching starships, best matches first, with the total count
+     */
+    @GetMapping("/search")
+    public PageResponse<Starship> search(@RequestParam @NotBlank String q, Pageable pageable) {
+        return PageResponse.of(starshipService.search(q, pageable));
+    }
+
+    /** Handler for get /filter?model=&minCost=&maxCost=&page=&size=&sort= request
+     * @param filter The model to match and the costInCredits range to stay in, found in the request's parameters. Each of them is optional
+     * @param pageable The page number, page size and sort order, found in the request's parameters (page is zero-based, sort is property[,asc|desc], by costInCredits when left out)
+     * @return Returns one page of the matching starships with the total count
+     * @throws BadRequestException Exception thrown when the lower bound of the range is greater than its upper bound
+     */
+    @GetMapping("/filter")
+    public PageResponse<Starship> filter(StarshipFilter filter, @SortDefault(sort = "costInCredits") Pageable pageable) throws BadRequestException {
+        return PageResponse.of(starshipService.filter(filter, pageable));
+    }
+
     /** Handler for put /{id} request
      * @param id The id of the starship we are modifying (integer greater than 0)
      * @param starship The Starship entity with the attribute values we want to override. Found in request body (model.Starship)
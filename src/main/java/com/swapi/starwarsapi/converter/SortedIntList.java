@@ -0,0 +1,133 @@
+package com.swapi.starwarsapi.converter;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable set of ids kept as a sorted int[] without duplicates, so a set of ids costs 4 bytes per id instead of a boxed Integer and a reference.
+ * It is exposed as a List of Integer in ascending order, which Jackson writes as the same json array as any other List.
+ * Elements are only boxed when they are read through the List interface, getInt reads them without boxing
+ */
+public final class SortedIntList extends AbstractList<Integer> implements RandomAccess, Serializable {
+    private static final SortedIntList EMPTY = new SortedIntList(new int[0]);
+
+    private final int[] values;
+
+    private SortedIntList(int[] values) {
+        this.values = values;
+    }
+
+    /** Builds the set from an array, which is used as is when it is already sorted without duplicates, the caller must not change it afterwards
+     * @param values the ids, in any order and possibly repeated
+     * @return the ids sorted, each once
+     */
+    public static SortedIntList of(int[] values) {
+        if (values.length == 0) {
+            return EMPTY;
+        }
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] >= values[i]) {
+                return new SortedIntList(Arrays.stream(values).sorted().distinct().toArray());
+            }
+        }
+        return new SortedIntList(values);
+    }
+
+    /** Builds the set from any collection of ids, like the List Jackson reads from a request body.
+     * A null id is kept as 0, so validation rejects it like any other id that isn't positive
+     * @param values the ids, in any order and possibly repeated
+     * @return the ids sorted, each once
+     */
+    public static SortedIntList copyOf(Collection<Integer> values) {
+        if (values instanceof SortedIntList sorted) {
+            return sorted;
+        }
+        int[] copy = new int[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            copy[i++] = value == null ? 0 : value;
+        }
+        return of(copy);
+    }
+
+    /** The empty set, shared
+     * @return an empty SortedIntList
+     */
+    public static SortedIntList empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return values[Objects.checkIndex(index, values.length)];
+    }
+
+    /** Reads an element without boxing it
+     * @param index position of the element
+     * @return the element
+     */
+    public int getInt(int index) {
+        return values[Objects.checkIndex(index, values.length)];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Integer value) {
+            int index = Arrays.binarySearch(values, value);
+            return index < 0 ? -1 : index;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return this.indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return this.indexOf(o) >= 0;
+    }
+
+    /** Looks an id up without boxing it
+     * @param value the id
+     * @return whether the set holds it
+     */
+    public boolean containsInt(int value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    /** Copies the elements out
+     * @return a new int[] with the elements in ascending order
+     */
+    public int[] toIntArray() {
+        return values.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        // same value as AbstractList.hashCode, without boxing every element
+        int hash = 1;
+        for (int value : values) {
+            hash = 31 * hash + value;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SortedIntList other) {
+            return Arrays.equals(values, other.values);
+        }
+        return super.equals(o);
+    }
+}
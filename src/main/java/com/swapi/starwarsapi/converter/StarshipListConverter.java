@@ -1,26 +1,58 @@
 package com.swapi.starwarsapi.converter;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 
-import java.lang.reflect.Type;
-import java.util.List;
+import java.util.stream.Collectors;
 
-@Converter(autoApply = true)
-public class StarshipListConverter implements AttributeConverter<List<Integer>, String> {
-
-    Gson gson = new Gson();
-    Type listType = new TypeToken<List<Integer>>() {}.getType();
+/**
+ * Reads the starship ids of a character from the text of an int array, straight into a SortedIntList.
+ * Accepts any separators around the numbers, so both postgres' {1,2} and h2's [1, 2] parse the same
+ */
+@Converter
+public class StarshipListConverter implements AttributeConverter<SortedIntList, String> {
 
     @Override
-    public String convertToDatabaseColumn(List<Integer> integers) {
-        return gson.toJson(integers);
+    public String convertToDatabaseColumn(SortedIntList starships) {
+        // unused: the attribute is a @Formula, which hibernate never writes. Kept as the plain inverse of the read side
+        return starships == null ? null : starships.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
     }
 
     @Override
-    public List<Integer> convertToEntityAttribute(String s) {
-        return gson.fromJson(s, listType);
+    public SortedIntList convertToEntityAttribute(String column) {
+        // array_agg over no rows is null, but a character without starships has always been an empty array
+        if (column == null) {
+            return SortedIntList.empty();
+        }
+        // first pass counts the numbers so the array is allocated once at its final size
+        int count = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < column.length(); i++) {
+            boolean digit = isDigit(column.charAt(i));
+            if (digit && !inNumber) {
+                count++;
+            }
+            inNumber = digit;
+        }
+        int[] starships = new int[count];
+        int index = -1;
+        inNumber = false;
+        for (int i = 0; i < column.length(); i++) {
+            char c = column.charAt(i);
+            if (isDigit(c)) {
+                if (!inNumber) {
+                    index++;
+                }
+                starships[index] = starships[index] * 10 + (c - '0');
+                inNumber = true;
+            } else {
+                inNumber = false;
+            }
+        }
+        return SortedIntList.of(starships);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 }
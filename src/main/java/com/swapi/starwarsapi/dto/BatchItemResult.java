@@ -0,0 +1,34 @@
+package com.swapi.starwarsapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of a single entity in a batch create request
+ * @param index position of the entity in the request body
+ * @param status http status the entity would have gotten from a single create request
+ * @param id id of the persisted entity, only set when it was created
+ * @param message reason the entity was rejected, only set when it was not created
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItemResult(int index, int status, Integer id, String message) {
+
+    /** Outcome for an entity that was persisted
+     * @param index position of the entity in the request body
+     * @param id id of the persisted entity
+     * @return BatchItemResult with a 201 status
+     */
+    public static BatchItemResult created(int index, int id) {
+        return new BatchItemResult(index, HttpStatus.CREATED.value(), id, null);
+    }
+
+    /** Outcome for an entity that was rejected
+     * @param index position of the entity in the request body
+     * @param status 400 for invalid entities, 409 for duplicate or missing records
+     * @param message reason the entity was rejected
+     * @return BatchItemResult with the given status
+     */
+    public static BatchItemResult rejected(int index, HttpStatus status, String message) {
+        return new BatchItemResult(index, status.value(), null, message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.swapi.starwarsapi.dto;
+
+/**
+ * Read-only view of a StarWarsCharacter for list endpoints that only need to name it.
+ * Selected straight into this record by a constructor expression, so no entity is hydrated or kept in the persistence context
+ * @param id id of the StarWarsCharacter
+ * @param name name of the StarWarsCharacter
+ */
+public record CharacterSummary(int id, String name) {
+}
@@ -0,0 +1,35 @@
+package com.swapi.starwarsapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+
+import java.util.List;
+
+/**
+ * StarWarsCharacter with its references resolved, returned when a request asks for ?expand=
+ * @param id id of the StarWarsCharacter
+ * @param name name of the StarWarsCharacter
+ * @param homePlanetId id of the home planet, always present
+ * @param homePlanet the home planet itself, only set when homePlanet is expanded
+ * @param starships the starship objects when starships is expanded, otherwise the starship ids as usual
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ExpandedCharacter(int id, String name, int homePlanetId, Planet homePlanet, List<?> starships) {
+
+    /** Expansion of a StarWarsCharacter with whatever was resolved for it
+     * @param character StarWarsCharacter we are expanding
+     * @param homePlanet resolved home planet, null to leave it out
+     * @param starships resolved starships, null to keep the ids
+     * @return ExpandedCharacter for the StarWarsCharacter
+     */
+    public static ExpandedCharacter of(StarWarsCharacter character, Planet homePlanet, List<?> starships) {
+        return new ExpandedCharacter(
+                character.getId(),
+                character.getName(),
+                character.getHomePlanetId(),
+                homePlanet,
+                starships == null ? character.getStarships() : starships
+        );
+    }
+}
@@ -0,0 +1,21 @@
+package com.swapi.starwarsapi.dto;
+
+/**
+ * Aggregates over every row of character_starship that change with nearly any insert or delete,
+ * so StarshipPilotIndex can tell whether the table moved without reading it
+ * @param rows number of memberships
+ * @param characterIdSum sum of their character ids
+ * @param idProductSum sum of character id times starship id
+ */
+public record MembershipFingerprint(long rows, long characterIdSum, long idProductSum) {
+
+    /** Fingerprint of the table after one membership was added or removed
+     * @param characterId character of the membership
+     * @param starshipId starship of the membership
+     * @param sign 1 for an added membership, -1 for a removed one
+     * @return the moved fingerprint
+     */
+    public MembershipFingerprint plus(int characterId, int starshipId, int sign) {
+        return new MembershipFingerprint(rows + sign, characterIdSum + (long) sign * characterId, idProductSum + (long) sign * characterId * starshipId);
+    }
+}
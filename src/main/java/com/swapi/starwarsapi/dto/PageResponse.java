@@ -0,0 +1,57 @@
+package com.swapi.starwarsapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Response body for the paginated and keyset list endpoints
+ * @param content entities on this page
+ * @param page zero-based page number, only set for page/size requests
+ * @param size requested page size
+ * @param totalElements total number of persisted entities, only set for page/size requests
+ * @param totalPages total number of pages, only set for page/size requests
+ * @param nextCursor value to pass as the after parameter to get the next page, null on the last page
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PageResponse<T>(
+        List<T> content,
+        Integer page,
+        int size,
+        Long totalElements,
+        Integer totalPages,
+        String nextCursor
+) {
+
+    /** Builds the response for an offset based page
+     * @param page Page returned by the repository
+     * @return PageResponse with page numbers and totals, but no cursor
+     */
+    public static <T> PageResponse<T> of(Page<T> page) {
+        return new PageResponse<>(
+                page.getContent(),
+                page.getNumber(),
+                page.getSize(),
+                page.getTotalElements(),
+                page.getTotalPages(),
+                null
+        );
+    }
+
+    /** Builds the response for a keyset slice
+     * @param slice Slice returned by the repository, ordered by id
+     * @param idOf function that reads the id of an entity
+     * @return PageResponse with the cursor of the last entity if there is a next slice
+     */
+    public static <T> PageResponse<T> of(Slice<T> slice, ToIntFunction<T> idOf) {
+        List<T> content = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext() && !content.isEmpty()) {
+            nextCursor = Integer.toString(idOf.applyAsInt(content.get(content.size() - 1)));
+        }
+        return new PageResponse<>(content, null, slice.getSize(), null, null, nextCursor);
+    }
+}
@@ -0,0 +1,10 @@
+package com.swapi.starwarsapi.dto;
+
+/**
+ * Conditions of GET /planets/filter, bound from the request's parameters. Every condition is optional, the ones given are and-ed
+ * @param climate climate the Planets must have, matched exactly
+ * @param minPopulation smallest population to include
+ * @param maxPopulation largest population to include
+ */
+public record PlanetFilter(String climate, Integer minPopulation, Integer maxPopulation) {
+}
@@ -0,0 +1,10 @@
+package com.swapi.starwarsapi.dto;
+
+/**
+ * Conditions of GET /starships/filter, bound from the request's parameters. Every condition is optional, the ones given are and-ed
+ * @param model model the Starships must be, matched exactly
+ * @param minCost smallest costInCredits to include
+ * @param maxCost largest costInCredits to include
+ */
+public record StarshipFilter(String model, Double minCost, Double maxCost) {
+}
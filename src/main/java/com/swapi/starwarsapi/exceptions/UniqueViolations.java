@@ -0,0 +1,49 @@
+package com.swapi.starwarsapi.exceptions;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import org.hibernate.exception.ConstraintViolationException;
+
+import java.util.Set;
+
+/**
+ * Recognizes violations of the unique constraints on name, so they can be answered with a ConflictException instead of a 500.
+ * Names are unique and the unique constraint is what enforces it: the services insert and translate the violation,
+ * since looking the name up first costs an extra round trip and still lets two parallel requests through.
+ * Any other unique violation, like a primary key or a character_starship row, is a bug or a broken schema and stays a 500
+ */
+public final class UniqueViolations {
+    // SQLSTATE for unique_violation, shared by postgres and the other databases hibernate supports
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final Set<String> NAME_CONSTRAINTS = Set.of(
+            Planet.NAME_CONSTRAINT, Starship.NAME_CONSTRAINT, StarWarsCharacter.NAME_CONSTRAINT);
+
+    private UniqueViolations() {
+    }
+
+    /** Walks the cause chain looking for the ConstraintViolationException hibernate made of the driver's error
+     * @param e exception thrown while inserting or updating
+     * @return true if the statement failed because it broke the unique constraint on a name
+     */
+    public static boolean isNameViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation
+                    && UNIQUE_VIOLATION.equals(violation.getSQLState())) {
+                return violation.getConstraintName() != null && isNameConstraint(violation.getConstraintName());
+            }
+        }
+        return false;
+    }
+
+    /** Helper function to match the constraint name hibernate read out of the driver's message
+     * @param constraintName name as the database reports it
+     * @return true if it is one of the unique constraints on name
+     */
+    private static boolean isNameConstraint(String constraintName) {
+        // h2 qualifies it with the schema, and reports the index backing the constraint, named after it with an _INDEX_n suffix
+        String name = constraintName.substring(constraintName.lastIndexOf('.') + 1).toLowerCase();
+        int index = name.lastIndexOf("_index_");
+        return NAME_CONSTRAINTS.contains(name) || index > 0 && NAME_CONSTRAINTS.contains(name.substring(0, index));
+    }
+}
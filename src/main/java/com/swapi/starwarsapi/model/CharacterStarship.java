@@ -0,0 +1,123 @@
+package com.swapi.starwarsapi.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * One row of the character_starship association table: character characterId flies starship starshipId.
+ * The composite primary key serves lookups by character, the starship_id index serves lookups by starship,
+ * and both foreign keys cascade so deleting a character or a starship cleans up its memberships.
+ */
+@Entity(name = "character_starship")
+@Table(indexes = @Index(name = "idx_character_starship_starship_id", columnList = "starship_id"))
+@IdClass(CharacterStarship.Key.class)
+public class CharacterStarship implements Persistable<CharacterStarship.Key> {
+    @Id
+    @Column(name = "character_id")
+    private int characterId;
+
+    @Id
+    @Column(name = "starship_id")
+    private int starshipId;
+
+    // only mapped so hibernate generates the foreign keys, the ids above are what gets written
+    @ManyToOne(targetEntity = StarWarsCharacter.class, fetch = FetchType.LAZY)
+    @JoinColumn(name = "character_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private StarWarsCharacter character;
+
+    @ManyToOne(targetEntity = Starship.class, fetch = FetchType.LAZY)
+    @JoinColumn(name = "starship_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Starship starship;
+
+    // rows are only ever inserted or deleted, never merged. Without this, save would select every row before inserting it
+    @Transient
+    private boolean isNew = true;
+
+    public CharacterStarship() {
+    }
+
+    public CharacterStarship(int characterId, int starshipId) {
+        this.characterId = characterId;
+        this.starshipId = starshipId;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public Key getId() {
+        return new Key(characterId, starshipId);
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @Override
+    public String toString() {
+        return "CharacterStarship{" +
+                "characterId=" + characterId +
+                ", starshipId=" + starshipId +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CharacterStarship characterStarship)) return false;
+        return getCharacterId() == characterStarship.getCharacterId() &&
+                getStarshipId() == characterStarship.getStarshipId();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getCharacterId(), getStarshipId());
+    }
+
+    public int getCharacterId() {
+        return characterId;
+    }
+
+    public int getStarshipId() {
+        return starshipId;
+    }
+
+    /**
+     * Composite primary key of character_starship
+     */
+    public static class Key implements Serializable {
+        private int characterId;
+        private int starshipId;
+
+        public Key() {
+        }
+
+        public Key(int characterId, int starshipId) {
+            this.characterId = characterId;
+            this.starshipId = starshipId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return characterId == key.characterId && starshipId == key.starshipId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(characterId, starshipId);
+        }
+    }
+}
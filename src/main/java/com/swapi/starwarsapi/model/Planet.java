@@ -5,17 +5,32 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Objects;
 
 @Entity(name = "galaxy_planet")
+// b-tree indexes for /planets/filter: climate with a population range, and a population range on its own
+@Table(indexes = {
+        @Index(name = "idx_galaxy_planet_climate_population", columnList = "climate, population"),
+        @Index(name = "idx_galaxy_planet_population", columnList = "population")
+}, uniqueConstraints = @UniqueConstraint(name = Planet.NAME_CONSTRAINT, columnNames = "name"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "galaxy_planet")
 public class Planet {
+    // named so a taken name can be told apart from other unique violations, see UniqueViolations
+    public static final String NAME_CONSTRAINT = "uk_galaxy_planet_name";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // IDENTITY makes hibernate insert every row on its own to read the id back, which disables jdbc batching.
+    // A pooled sequence hands out ids in blocks of 50 without a round trip per row
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "galaxy_planet_seq")
+    @SequenceGenerator(name = "galaxy_planet_seq", sequenceName = "galaxy_planet_seq", allocationSize = 50)
     private int id;
 
     @NotBlank(message="name cannot be blank")
-    @Column(nullable=false, unique=true)
+    @Column(nullable=false)
     private String name;
 
     @NotBlank(message="climate cannot be blank")
@@ -1,22 +1,28 @@
 package com.swapi.starwarsapi.model;
 
+import com.swapi.starwarsapi.converter.SortedIntList;
+import com.swapi.starwarsapi.converter.StarshipListConverter;
 import jakarta.persistence.*;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
-import org.hibernate.annotations.ColumnTransformer;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
+import org.hibernate.annotations.Formula;
 
 import java.util.*;
 
 @Entity(name = "star_wars_character")
+// postgres doesn't index foreign keys on its own, this one serves the residents of a planet
+@Table(indexes = @Index(name = "idx_star_wars_character_home_planet", columnList = "home_planet"),
+        uniqueConstraints = @UniqueConstraint(name = StarWarsCharacter.NAME_CONSTRAINT, columnNames = "name"))
 public class StarWarsCharacter {
+    public static final String NAME_CONSTRAINT = "uk_star_wars_character_name";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "star_wars_character_seq")
+    @SequenceGenerator(name = "star_wars_character_seq", sequenceName = "star_wars_character_seq", allocationSize = 50)
     private int id;
 
-    @Column(nullable=false, unique=true)
+    @Column(nullable=false)
     @NotBlank(message="name cannot be blank")
     private String name;
 
@@ -28,10 +34,16 @@ public class StarWarsCharacter {
     @NotNull(message="home_planet cannot be null")
     private Integer homePlanetId;
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(columnDefinition="jsonb")
+    // Starship membership is stored in the character_starship table (see CharacterStarship), where postgres can
+    // enforce the foreign keys and index it by starship. It is read back with the character in the same select,
+    // sorted, and written by StarWarsCharacterService.
+    // The array comes back as text and StarshipListConverter parses it into an int[], no jdbc array and no boxed Integer per id.
+    // Ids set from a request body are sorted and deduped the same way, so a character holds the set it will be read back as.
+    // This is part of the api, not a storage detail: responses list the starships in ascending order, each once, see USAGE.md
+    @Formula("(select cast(array_agg(cs.starship_id order by cs.starship_id) as varchar) from character_starship cs where cs.character_id = id)")
+    @Convert(converter = StarshipListConverter.class)
     @NotNull(message="starships can be an empty array, but not null")
-    private List<Integer> starships;
+    private SortedIntList starships;
 
     public StarWarsCharacter() {
     }
@@ -39,7 +51,7 @@ public class StarWarsCharacter {
     public StarWarsCharacter(String name, int homePlanetId, List<Integer> starships) {
         this.name = name;
         this.homePlanetId = homePlanetId;
-        this.starships = starships;
+        this.setStarships(starships);
     }
 
     @Override
@@ -96,7 +108,7 @@ public class StarWarsCharacter {
     }
 
     public void setStarships(List<Integer> starships) {
-        this.starships = starships;
+        this.starships = starships == null ? null : SortedIntList.copyOf(starships);
     }
 
 }
@@ -3,19 +3,30 @@ package com.swapi.starwarsapi.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Objects;
 
 @Entity(name = "starship_master")
+// b-tree indexes for /starships/filter: model with a cost range, and a cost range on its own
+@Table(indexes = {
+        @Index(name = "idx_starship_master_model_cost", columnList = "model, cost_in_credits"),
+        @Index(name = "idx_starship_master_cost", columnList = "cost_in_credits")
+}, uniqueConstraints = @UniqueConstraint(name = Starship.NAME_CONSTRAINT, columnNames = "name"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "starship_master")
 public class Starship {
+    public static final String NAME_CONSTRAINT = "uk_starship_master_name";
     private static final double MONEY_MAX_VALUE = 92233720368547758.07;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "starship_master_seq")
+    @SequenceGenerator(name = "starship_master_seq", sequenceName = "starship_master_seq", allocationSize = 50)
     private int id;
 
     @NotBlank(message="name cannot be blank, empty, or null")
-    @Column(nullable=false, unique=true)
+    @Column(nullable=false)
     private String name;
 
     @NotBlank(message="model cannot be blank, empty, or null")
@@ -0,0 +1,24 @@
+package com.swapi.starwarsapi.reactive;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Server setup of the reactive profile.
+ * jdbc, jpa and their repositories are excluded in application-reactive.properties, so the beans built on them
+ * (services, name search, pilot index, caches and request database stats) carry @Profile("!reactive") and only r2dbc talks to the database
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    /** Runs WebFlux on netty's event loop. Tomcat is on the classpath for the blocking controllers and would be picked first otherwise
+     * @return factory for the netty server
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,63 @@
+package com.swapi.starwarsapi.reactive;
+
+import com.swapi.starwarsapi.model.Planet;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of galaxy_planet over r2dbc, for the reactive profile.
+ * Maps onto the jpa entity so the json is the same as the blocking endpoints'
+ */
+@Repository
+@Profile("reactive")
+public class ReactivePlanetRepository {
+    // the driver fetches this many rows per round trip while a list is streamed
+    private static final int FETCH_SIZE = 500;
+    private static final String SELECT = "select id, name, climate, population from galaxy_planet";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /** Streams every planet in id order, rows are fetched from the database as the subscriber asks for them
+     * @return Flux of every persisted planet
+     */
+    public Flux<Planet> findAll() {
+        return databaseClient.sql(SELECT + " order by id")
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(ReactivePlanetRepository::toPlanet)
+                .all();
+    }
+
+    /** Finds a planet by id
+     * @param id id of the planet
+     * @return Mono of the planet, empty if it doesn't exist
+     */
+    public Mono<Planet> findById(int id) {
+        return databaseClient.sql(SELECT + " where id = :id")
+                .bind("id", id)
+                .map(ReactivePlanetRepository::toPlanet)
+                .one();
+    }
+
+    /** Finds a planet by name
+     * @param name name of the planet
+     * @return Mono of the planet, empty if it doesn't exist
+     */
+    public Mono<Planet> findByName(String name) {
+        return databaseClient.sql(SELECT + " where name = :name")
+                .bind("name", name)
+                .map(ReactivePlanetRepository::toPlanet)
+                .one();
+    }
+
+    private static Planet toPlanet(Readable row) {
+        Planet planet = new Planet(row.get("name", String.class), row.get("climate", String.class), row.get("population", Integer.class));
+        planet.setId(row.get("id", Integer.class));
+        return planet;
+    }
+}
@@ -0,0 +1,51 @@
+package com.swapi.starwarsapi.reactive;
+
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * This is the reactive controller for the /characters uri, serving its reads when the reactive profile is active.
+ * Paging, expansions, exports and writes stay on the blocking StarWarsCharacterController, which isn't loaded under this profile,
+ * so a reactive instance serves reads only and writes go to instances running without it
+ */
+@RestController
+@RequestMapping("/characters")
+@Profile("reactive")
+public class ReactiveStarWarsCharacterController {
+    @Autowired
+    private ReactiveStarWarsCharacterRepository reactiveCharacterRepository;
+
+    /** Handler for get / request
+     * @return Returns every persisted character. Streamed one per line with backpressure when the client accepts application/x-ndjson
+     */
+    @GetMapping(params = {"!page", "!after", "!expand"}, produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<StarWarsCharacter> findAll() {
+        return reactiveCharacterRepository.findAll();
+    }
+
+    /** Handler for get /{id} request
+     * @param id The id of the character we are searching for (integer greater than 0)
+     * @return Returns the character if found, an empty body if not
+     */
+    @GetMapping("/{id}")
+    public Mono<StarWarsCharacter> findById(@PathVariable @NotNull @Min(1) int id) {
+        return reactiveCharacterRepository.findById(id);
+    }
+
+    /** Handler for get /find request
+     * @param name The name of the character we are searching for, found in the request's parameters (String not null, length > 0)
+     * @return Returns the character if found, an empty body if not
+     */
+    @GetMapping("/find")
+    public Mono<StarWarsCharacter> findByName(@RequestParam @NotBlank String name) {
+        return reactiveCharacterRepository.findByName(name);
+    }
+}
@@ -0,0 +1,73 @@
+package com.swapi.starwarsapi.reactive;
+
+import com.swapi.starwarsapi.converter.SortedIntList;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of star_wars_character over r2dbc, for the reactive profile.
+ * Starships are aggregated from character_starship in the same select, like the @Formula on StarWarsCharacter does
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveStarWarsCharacterRepository {
+    // the driver fetches this many rows per round trip while a list is streamed
+    private static final int FETCH_SIZE = 500;
+    private static final String SELECT = "select c.id, c.name, c.home_planet, " +
+            "(select array_agg(cs.starship_id order by cs.starship_id) from character_starship cs where cs.character_id = c.id) as starships " +
+            "from star_wars_character c";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /** Streams every character in id order, rows are fetched from the database as the subscriber asks for them
+     * @return Flux of every persisted character
+     */
+    public Flux<StarWarsCharacter> findAll() {
+        return databaseClient.sql(SELECT + " order by c.id")
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(ReactiveStarWarsCharacterRepository::toCharacter)
+                .all();
+    }
+
+    /** Finds a character by id
+     * @param id id of the character
+     * @return Mono of the character, empty if it doesn't exist
+     */
+    public Mono<StarWarsCharacter> findById(int id) {
+        return databaseClient.sql(SELECT + " where c.id = :id")
+                .bind("id", id)
+                .map(ReactiveStarWarsCharacterRepository::toCharacter)
+                .one();
+    }
+
+    /** Finds a character by name
+     * @param name name of the character
+     * @return Mono of the character, empty if it doesn't exist
+     */
+    public Mono<StarWarsCharacter> findByName(String name) {
+        return databaseClient.sql(SELECT + " where c.name = :name")
+                .bind("name", name)
+                .map(ReactiveStarWarsCharacterRepository::toCharacter)
+                .one();
+    }
+
+    private static StarWarsCharacter toCharacter(Readable row) {
+        // postgres hands the array back as Integer[], h2 as Object[], and array_agg over no rows is null
+        Object[] ids = (Object[]) row.get("starships");
+        int[] starships = new int[ids == null ? 0 : ids.length];
+        for (int i = 0; i < starships.length; i++) {
+            starships[i] = ((Number) ids[i]).intValue();
+        }
+        StarWarsCharacter character = new StarWarsCharacter(row.get("name", String.class), row.get("home_planet", Integer.class),
+                SortedIntList.of(starships));
+        character.setId(row.get("id", Integer.class));
+        return character;
+    }
+}
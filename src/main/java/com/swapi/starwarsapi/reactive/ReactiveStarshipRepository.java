@@ -0,0 +1,63 @@
+package com.swapi.starwarsapi.reactive;
+
+import com.swapi.starwarsapi.model.Starship;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of starship_master over r2dbc, for the reactive profile.
+ * Maps onto the jpa entity so the json is the same as the blocking endpoints'
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveStarshipRepository {
+    // the driver fetches this many rows per round trip while a list is streamed
+    private static final int FETCH_SIZE = 500;
+    private static final String SELECT = "select id, name, model, cost_in_credits from starship_master";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /** Streams every starship in id order, rows are fetched from the database as the subscriber asks for them
+     * @return Flux of every persisted starship
+     */
+    public Flux<Starship> findAll() {
+        return databaseClient.sql(SELECT + " order by id")
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(ReactiveStarshipRepository::toStarship)
+                .all();
+    }
+
+    /** Finds a starship by id
+     * @param id id of the starship
+     * @return Mono of the starship, empty if it doesn't exist
+     */
+    public Mono<Starship> findById(int id) {
+        return databaseClient.sql(SELECT + " where id = :id")
+                .bind("id", id)
+                .map(ReactiveStarshipRepository::toStarship)
+                .one();
+    }
+
+    /** Finds a starship by name
+     * @param name name of the starship
+     * @return Mono of the starship, empty if it doesn't exist
+     */
+    public Mono<Starship> findByName(String name) {
+        return databaseClient.sql(SELECT + " where name = :name")
+                .bind("name", name)
+                .map(ReactiveStarshipRepository::toStarship)
+                .one();
+    }
+
+    private static Starship toStarship(Readable row) {
+        Starship starship = new Starship(row.get("name", String.class), row.get("model", String.class), row.get("cost_in_credits", Double.class));
+        starship.setId(row.get("id", Integer.class));
+        return starship;
+    }
+}
@@ -0,0 +1,35 @@
+package com.swapi.starwarsapi.repository;
+
+import com.swapi.starwarsapi.dto.MembershipFingerprint;
+import com.swapi.starwarsapi.model.CharacterStarship;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Stream;
+
+public interface CharacterStarshipRepository extends JpaRepository<CharacterStarship, CharacterStarship.Key> {
+    // Memberships are written through this repository and read back on StarWarsCharacter.starships.
+    // Deleting a character or starship cascades in the database, so only replacing a character's starships needs a delete
+
+    // Forward-only cursor over every membership as (characterId, starshipId), for rebuilding StarshipPilotIndex.
+    // Only the two ids are selected, so nothing ends up in the persistence context
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("select cs.characterId, cs.starshipId from character_starship cs")
+    Stream<Object[]> streamAllIds();
+
+    // Aggregates over the two ids only, so postgres can answer it from the primary key index
+    @Query("select new com.swapi.starwarsapi.dto.MembershipFingerprint(count(cs), coalesce(sum(cast(cs.characterId as Long)), 0), " +
+            "coalesce(sum(cast(cs.characterId as Long) * cs.starshipId), 0)) from character_starship cs")
+    MembershipFingerprint fingerprint();
+
+    @Modifying
+    @Transactional
+    @Query("delete from character_starship cs where cs.characterId=:characterId")
+    void deleteByCharacterId(@Param("characterId") Integer characterId);
+}
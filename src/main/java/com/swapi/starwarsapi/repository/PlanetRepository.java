@@ -1,24 +1,83 @@
 package com.swapi.starwarsapi.repository;
 
+import com.swapi.starwarsapi.config.SecondLevelCacheConfig;
 import com.swapi.starwarsapi.model.Planet;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface PlanetRepository extends JpaRepository<Planet, Integer> {
+// JpaSpecificationExecutor runs the criteria queries built by PlanetSpecifications, for /planets/filter
+public interface PlanetRepository extends JpaRepository<Planet, Integer>, JpaSpecificationExecutor<Planet> {
     // Logic for findByName is already taken care of under the hood. No need for a native query,
-    // so I hope my update and delete entity queries are impressive enough
+    // so I hope my update and delete entity queries are impressive enough.
+    // The updates return the number of rows they touched, which is how the services tell a missing record apart
 
+    // Cached in the query cache, any insert, update or delete on the table invalidates it.
+    // Like the keyset query below it is read-only, hibernate keeps no dirty-checking snapshot of what it loads
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.PLANET_BY_NAME_REGION)
+    })
     Optional<Planet> findByName(String name);
 
+    // Set-based name lookup for batch creates, only the names that are already taken come back
+    @Query("select p.name from galaxy_planet p where p.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    // Resolves a whole batch of ids in one round trip, only the ids that exist come back
+    @Query("select p.id from galaxy_planet p where p.id in :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    // Keyset pagination, walks the primary key index from the cursor instead of skipping rows with an offset
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Slice<Planet> findByIdGreaterThan(int id, Pageable pageable);
+
+    // Name search on postgres, see NameSearch. Both conditions are served by the GIN trigram index on name:
+    // ilike finds prefixes and substrings, % finds names similar enough to the query (pg_trgm.similarity_threshold).
+    // Prefix matches rank first, then substring matches, then the rest, each by similarity
+    @Query(
+            value = "select p.id from galaxy_planet p where p.name ilike :substringPattern or p.name % :query " +
+                    "order by case when p.name ilike :prefixPattern then 0 when p.name ilike :substringPattern then 1 else 2 end, " +
+                    "similarity(p.name, :query) desc, p.name, p.id",
+            countQuery = "select count(*) from galaxy_planet p where p.name ilike :substringPattern or p.name % :query",
+            nativeQuery = true
+    )
+    Page<Integer> searchIdsByName(@Param("query") String query, @Param("prefixPattern") String prefixPattern,
+                                  @Param("substringPattern") String substringPattern, Pageable pageable);
+
+    // Forward-only cursor over every id and name, for the in-memory name search NameSearch falls back to
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("select p.id, p.name from galaxy_planet p")
+    Stream<Object[]> streamIdsAndNames();
+
+    // Forward-only cursor for exports. The fetch size keeps the driver from buffering the whole result,
+    // and must be consumed inside a transaction since postgres only streams with autocommit off
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p from galaxy_planet p order by p.id")
+    Stream<Planet> streamAll();
+
     @Modifying
     @Transactional
     @Query("Update galaxy_planet p set p.climate = :climate, p.population = :population where p.name=:name")
-    void updateByName(
+    int updateByName(
             @Param("name") String name,
             @Param("climate") String climate,
             @Param("population") Integer population
@@ -27,7 +86,7 @@ public interface PlanetRepository extends JpaRepository<Planet, Integer> {
     @Modifying
     @Transactional
     @Query("Update galaxy_planet p set p.name=:name, p.climate = :climate, p.population = :population where p.id=:id")
-    void updateById(
+    int updateById(
             @Param("id") Integer id,
             @Param("name") String name,
             @Param("climate") String climate,
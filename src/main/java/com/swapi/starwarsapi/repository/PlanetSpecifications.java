@@ -0,0 +1,39 @@
+package com.swapi.starwarsapi.repository;
+
+import com.swapi.starwarsapi.dto.PlanetFilter;
+import com.swapi.starwarsapi.model.Planet;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria queries over Planet for PlanetRepository's JpaSpecificationExecutor methods.
+ * Climate is compared with equality and population with a range, so both are served by the b-tree indexes declared on Planet
+ */
+public final class PlanetSpecifications {
+
+    private PlanetSpecifications() {
+    }
+
+    /** Planets matching every condition of a filter
+     * @param filter conditions, the ones left null are ignored
+     * @return the specification, matching every Planet when no condition is set
+     */
+    public static Specification<Planet> matching(PlanetFilter filter) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>(3);
+            if (filter.climate() != null) {
+                predicates.add(builder.equal(root.get("climate"), filter.climate()));
+            }
+            if (filter.minPopulation() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("population"), filter.minPopulation()));
+            }
+            if (filter.maxPopulation() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("population"), filter.maxPopulation()));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
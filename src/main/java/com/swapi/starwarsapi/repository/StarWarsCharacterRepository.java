@@ -1,39 +1,106 @@
 package com.swapi.starwarsapi.repository;
 
+import com.swapi.starwarsapi.dto.CharacterSummary;
 import com.swapi.starwarsapi.model.StarWarsCharacter;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 public interface StarWarsCharacterRepository extends JpaRepository<StarWarsCharacter, Integer> {
     // Logic for findByName is already taken care of under the hood. No need for a native query,
-    // so I hope my update and delete entity queries are impressive enough
+    // so I hope my update and delete entity queries are impressive enough.
+    // The updates return the number of rows they touched, which is how the services tell a missing record apart.
+    // The queries that load entities only for reading are read-only, so hibernate keeps no dirty-checking snapshot of them
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
     Optional<StarWarsCharacter> findByName(String name);
 
+    @Query("select s.id from star_wars_character s where s.name=:name")
+    Optional<Integer> findIdByName(@Param("name") String name);
+
+    // Set-based name lookup for batch creates, only the names that are already taken come back
+    @Query("select s.name from star_wars_character s where s.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    // Reverse lookup through character_starship. The subquery and the count both only read the starship_id index,
+    // so the cost follows the number of pilots rather than the number of characters
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(
+            value = "select s from star_wars_character s where s.id in " +
+                    "(select cs.characterId from character_starship cs where cs.starshipId=:starshipId)",
+            countQuery = "select count(cs) from character_starship cs where cs.starshipId=:starshipId"
+    )
+    Page<StarWarsCharacter> findByStarshipId(@Param("starshipId") int starshipId, Pageable pageable);
+
+    // Residents of a planet, found through idx_star_wars_character_home_planet. Only id and name are selected,
+    // which also skips the starships subquery that comes with every full StarWarsCharacter
+    @Query(
+            value = "select new com.swapi.starwarsapi.dto.CharacterSummary(s.id, s.name) " +
+                    "from star_wars_character s where s.homePlanetId=:homePlanetId",
+            countQuery = "select count(s) from star_wars_character s where s.homePlanetId=:homePlanetId"
+    )
+    Page<CharacterSummary> findSummariesByHomePlanetId(@Param("homePlanetId") int homePlanetId, Pageable pageable);
+
+    // Keyset pagination, walks the primary key index from the cursor instead of skipping rows with an offset
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Slice<StarWarsCharacter> findByIdGreaterThan(int id, Pageable pageable);
+
+    // Name search on postgres, see NameSearch. Both conditions are served by the GIN trigram index on name:
+    // ilike finds prefixes and substrings, % finds names similar enough to the query (pg_trgm.similarity_threshold).
+    // Prefix matches rank first, then substring matches, then the rest, each by similarity
+    @Query(
+            value = "select c.id from star_wars_character c where c.name ilike :substringPattern or c.name % :query " +
+                    "order by case when c.name ilike :prefixPattern then 0 when c.name ilike :substringPattern then 1 else 2 end, " +
+                    "similarity(c.name, :query) desc, c.name, c.id",
+            countQuery = "select count(*) from star_wars_character c where c.name ilike :substringPattern or c.name % :query",
+            nativeQuery = true
+    )
+    Page<Integer> searchIdsByName(@Param("query") String query, @Param("prefixPattern") String prefixPattern,
+                                  @Param("substringPattern") String substringPattern, Pageable pageable);
+
+    // Forward-only cursor over every id and name, for the in-memory name search NameSearch falls back to
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("select c.id, c.name from star_wars_character c")
+    Stream<Object[]> streamIdsAndNames();
+
+    // Forward-only cursor for exports. The fetch size keeps the driver from buffering the whole result,
+    // and must be consumed inside a transaction since postgres only streams with autocommit off
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select s from star_wars_character s order by s.id")
+    Stream<StarWarsCharacter> streamAll();
+
     @Modifying
     @Transactional
-    @Query("update star_wars_character s set s.homePlanetId=:homePlanetId, s.starships=:starships where s.name=:name")
-    void updateByName(
+    @Query("update star_wars_character s set s.homePlanetId=:homePlanetId where s.name=:name")
+    int updateByName(
             @Param("name") String name,
-            @Param("homePlanetId") Integer homePlanetId,
-            @Param("starships") List<Integer> starships
+            @Param("homePlanetId") Integer homePlanetId
     );
 
     @Modifying
     @Transactional
-    @Query("update star_wars_character s set s.name=:name, s.homePlanetId=:homePlanetId, s.starships=:starships where s.id=:id")
-    void updateById(
+    @Query("update star_wars_character s set s.name=:name, s.homePlanetId=:homePlanetId where s.id=:id")
+    int updateById(
             @Param("id") Integer id,
             @Param("name") String name,
-            @Param("homePlanetId") Integer homePlanetId,
-            @Param("starships") List<Integer> starships
+            @Param("homePlanetId") Integer homePlanetId
     );
 
     @Modifying
@@ -1,24 +1,86 @@
 package com.swapi.starwarsapi.repository;
 
+import com.swapi.starwarsapi.config.SecondLevelCacheConfig;
 import com.swapi.starwarsapi.model.Starship;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface StarshipRepository extends JpaRepository<Starship, Integer> {
+// JpaSpecificationExecutor runs the criteria queries built by StarshipSpecifications, for /starships/filter
+public interface StarshipRepository extends JpaRepository<Starship, Integer>, JpaSpecificationExecutor<Starship> {
     // Logic for findByName is already taken care of under the hood. No need for a native query,
-    // so I hope my update and delete entity queries are impressive enough
+    // so I hope my update and delete entity queries are impressive enough.
+    // The updates return the number of rows they touched, which is how the services tell a missing record apart
 
+    // Cached in the query cache, any insert, update or delete on the table invalidates it.
+    // Like the keyset query below it is read-only, hibernate keeps no dirty-checking snapshot of what it loads
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.STARSHIP_BY_NAME_REGION)
+    })
     Optional<Starship> findByName(String name);
 
+    // Set-based name lookup for batch creates, only the names that are already taken come back
+    @Query("select s.name from starship_master s where s.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    // Keyset pagination, walks the primary key index from the cursor instead of skipping rows with an offset
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Slice<Starship> findByIdGreaterThan(int id, Pageable pageable);
+
+    // Name search on postgres, see NameSearch. Both conditions are served by the GIN trigram index on name:
+    // ilike finds prefixes and substrings, % finds names similar enough to the query (pg_trgm.similarity_threshold).
+    // Prefix matches rank first, then substring matches, then the rest, each by similarity
+    @Query(
+            value = "select s.id from starship_master s where s.name ilike :substringPattern or s.name % :query " +
+                    "order by case when s.name ilike :prefixPattern then 0 when s.name ilike :substringPattern then 1 else 2 end, " +
+                    "similarity(s.name, :query) desc, s.name, s.id",
+            countQuery = "select count(*) from starship_master s where s.name ilike :substringPattern or s.name % :query",
+            nativeQuery = true
+    )
+    Page<Integer> searchIdsByName(@Param("query") String query, @Param("prefixPattern") String prefixPattern,
+                                  @Param("substringPattern") String substringPattern, Pageable pageable);
+
+    // Forward-only cursor over every id and name, for the in-memory name search NameSearch falls back to
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("select s.id, s.name from starship_master s")
+    Stream<Object[]> streamIdsAndNames();
+
+    // Forward-only cursor for exports. The fetch size keeps the driver from buffering the whole result,
+    // and must be consumed inside a transaction since postgres only streams with autocommit off
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select s from starship_master s order by s.id")
+    Stream<Starship> streamAll();
+
+    @Query("select s.id from starship_master s where s.name=:name")
+    Optional<Integer> findIdByName(@Param("name") String name);
+
+    // Resolves a whole batch of ids in one round trip, only the ids that exist come back
+    @Query("select s.id from starship_master s where s.id in :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
     @Modifying
     @Transactional
     @Query("update starship_master s set s.model=:model, s.costInCredits=:costInCredits where s.name=:name")
-    void updateByName(
+    int updateByName(
             @Param("name") String name,
             @Param("model") String model,
             @Param("costInCredits") Double costInCredits
@@ -27,7 +89,7 @@ public interface StarshipRepository extends JpaRepository<Starship, Integer> {
     @Modifying
     @Transactional
     @Query("update starship_master s set s.name=:name, s.model=:model, s.costInCredits=:costInCredits where s.id=:id")
-    void updateById(
+    int updateById(
             @Param("id") Integer id,
             @Param("name") String name,
             @Param("model") String model,
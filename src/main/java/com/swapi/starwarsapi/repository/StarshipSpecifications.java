@@ -0,0 +1,39 @@
+package com.swapi.starwarsapi.repository;
+
+import com.swapi.starwarsapi.dto.StarshipFilter;
+import com.swapi.starwarsapi.model.Starship;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria queries over Starship for StarshipRepository's JpaSpecificationExecutor methods.
+ * Model is compared with equality and costInCredits with a range, so both are served by the b-tree indexes declared on Starship
+ */
+public final class StarshipSpecifications {
+
+    private StarshipSpecifications() {
+    }
+
+    /** Starships matching every condition of a filter
+     * @param filter conditions, the ones left null are ignored
+     * @return the specification, matching every Starship when no condition is set
+     */
+    public static Specification<Starship> matching(StarshipFilter filter) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>(3);
+            if (filter.model() != null) {
+                predicates.add(builder.equal(root.get("model"), filter.model()));
+            }
+            if (filter.minCost() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("costInCredits"), filter.minCost()));
+            }
+            if (filter.maxCost() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("costInCredits"), filter.maxCost()));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
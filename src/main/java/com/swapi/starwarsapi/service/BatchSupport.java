@@ -0,0 +1,133 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.exceptions.UniqueViolations;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Shared plumbing for the services that create or look up many entities at once
+ */
+@Component
+@Profile("!reactive")
+public class BatchSupport {
+    // postgres caps a statement at 32767 bind parameters, so set-based lookups are split into chunks well below that
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private Validator validator;
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    /** Runs the annotation-driven validation that @Valid would run on a single create request
+     * @param entity entity we want to validate
+     * @return the violation messages joined together, null if the entity is valid
+     */
+    public String validate(Object entity) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(entity);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    /** Resolves which keys exist with one query per chunk of keys, instead of one query per key
+     * @param keys keys we want to look up
+     * @param query repository query that returns the keys that exist out of the ones it is given
+     * @return Set of the given keys that exist
+     */
+    public <T> Set<T> findExisting(Collection<T> keys, Function<Collection<T>, Collection<T>> query) {
+        return new HashSet<>(this.findAll(keys, query));
+    }
+
+    /** Runs a set-based lookup with one query per chunk of keys, instead of one query per key
+     * @param keys keys we want to look up
+     * @param query repository query that returns the rows matching the keys it is given
+     * @return List of the rows returned for every chunk
+     */
+    public <K, V> List<V> findAll(Collection<K> keys, Function<Collection<K>, ? extends Collection<V>> query) {
+        List<V> found = new ArrayList<>();
+        List<K> chunk = new ArrayList<>(Math.min(keys.size(), LOOKUP_CHUNK_SIZE));
+        for (K key : keys) {
+            chunk.add(key);
+            if (chunk.size() == LOOKUP_CHUNK_SIZE) {
+                found.addAll(query.apply(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            found.addAll(query.apply(chunk));
+        }
+        return found;
+    }
+
+    /** Loads the entities behind a page of ids in one query per chunk, in the order of the ids
+     * @param ids Page of ids, in the order the entities should come back in
+     * @param query repository query that returns the entities with the ids it is given, in any order
+     * @param idOf function that reads the id of an entity
+     * @return Page of the entities, with the total count of the ids. An id whose entity was deleted in the meantime is skipped
+     */
+    public <V> Page<V> findPage(Page<Integer> ids, Function<Collection<Integer>, ? extends Collection<V>> query, ToIntFunction<V> idOf) {
+        Map<Integer, V> byId = new HashMap<>();
+        for (V entity : this.findAll(ids.getContent(), query)) {
+            byId.put(idOf.applyAsInt(entity), entity);
+        }
+        List<V> ordered = new ArrayList<>(ids.getNumberOfElements());
+        for (int id : ids) {
+            V entity = byId.get(id);
+            if (entity != null) {
+                ordered.add(entity);
+            }
+        }
+        return new PageImpl<>(ordered, ids.getPageable(), ids.getTotalElements());
+    }
+
+    /** Persists the entities in jdbc batches. Must be called inside a transaction
+     * @param entities new entities we want to insert
+     * @throws ConflictException when another request took one of the names after they were checked. The transaction is rolled back
+     */
+    public void persistAll(List<?> entities) throws ConflictException {
+        // flushing and clearing every batch keeps the persistence context, and the insert batches, at batch_size
+        try {
+            for (int i = 0; i < entities.size(); i++) {
+                entityManager.persist(entities.get(i));
+                if ((i + 1) % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        } catch (PersistenceException e) {
+            if (UniqueViolations.isNameViolation(e)) {
+                throw new ConflictException("a name in the batch was taken by another request while it was being created, nothing was created");
+            }
+            throw e;
+        }
+    }
+}
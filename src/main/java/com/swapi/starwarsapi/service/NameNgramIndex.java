@@ -0,0 +1,172 @@
+package com.swapi.starwarsapi.service;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * In-memory trigram index over the names of one table, the fallback NameSearch uses when the database has no pg_trgm.
+ * Matches and ranks the way the postgres search query does: prefix matches first, then substring matches,
+ * then names whose pg_trgm similarity to the query reaches SIMILARITY_THRESHOLD, each group by similarity and then by name.
+ * Fill it with add, then only search it
+ */
+public final class NameNgramIndex {
+    // pg_trgm.similarity_threshold's default, what the % operator compares against
+    static final double SIMILARITY_THRESHOLD = 0.3;
+
+    // one entry per name, at the position it was added at
+    private int size;
+    private int[] ids = new int[16];
+    private int[] trigramCounts = new int[16];
+    private final List<String> names = new ArrayList<>();
+    private final List<String> lowerNames = new ArrayList<>();
+    // bitmaps hold positions rather than ids, positions are dense where ids may not be
+    private final Map<String, RoaringBitmap> wordTrigrams = new HashMap<>();
+    private final Map<String, RoaringBitmap> substringTrigrams = new HashMap<>();
+
+    /** Indexes one name
+     * @param id id of the row
+     * @param name its name
+     */
+    public void add(int id, String name) {
+        int position = size++;
+        if (position == ids.length) {
+            ids = Arrays.copyOf(ids, position * 2);
+            trigramCounts = Arrays.copyOf(trigramCounts, position * 2);
+        }
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        Set<String> trigrams = wordTrigrams(lowerName);
+        ids[position] = id;
+        trigramCounts[position] = trigrams.size();
+        names.add(name);
+        lowerNames.add(lowerName);
+        for (String trigram : trigrams) {
+            wordTrigrams.computeIfAbsent(trigram, t -> new RoaringBitmap()).add(position);
+        }
+        for (int i = 0; i + 3 <= lowerName.length(); i++) {
+            substringTrigrams.computeIfAbsent(lowerName.substring(i, i + 3), t -> new RoaringBitmap()).add(position);
+        }
+    }
+
+    /** Finds the names matching a query, best matches first
+     * @param query text to look for, case-insensitive
+     * @return ids of the matching rows, ranked
+     */
+    public int[] search(String query) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        Set<String> queryTrigrams = wordTrigrams(lowerQuery);
+        RoaringBitmap[] queryBitmaps = queryTrigrams.stream()
+                .map(wordTrigrams::get)
+                .filter(Objects::nonNull)
+                .toArray(RoaringBitmap[]::new);
+        // similarity is at most shared / queryTrigrams, so a name sharing fewer than minShared trigrams can only match as a substring
+        int minShared = 1;
+        while ((double) minShared / queryTrigrams.size() < SIMILARITY_THRESHOLD) {
+            minShared++;
+        }
+
+        // substring candidates share every trigram of the query. Queries under 3 characters have none, so every name is a candidate
+        RoaringBitmap substrings = this.substringCandidates(lowerQuery);
+        RoaringBitmap[] sharing = sharingAtLeast(queryBitmaps);
+        List<Match> matches = new ArrayList<>();
+        for (int shared = sharing.length; shared >= 1; shared--) {
+            RoaringBitmap exactly = shared < sharing.length ? RoaringBitmap.andNot(sharing[shared - 1], sharing[shared]) : sharing[shared - 1];
+            if (shared < minShared) {
+                exactly.and(substrings);
+            }
+            this.collect(exactly, shared, lowerQuery, queryTrigrams.size(), matches);
+        }
+        this.collect(sharing.length == 0 ? substrings : RoaringBitmap.andNot(substrings, sharing[0]), 0, lowerQuery, queryTrigrams.size(), matches);
+
+        matches.sort(Comparator.comparingInt(Match::rank)
+                .thenComparing(Comparator.comparingDouble(Match::similarity).reversed())
+                .thenComparing(match -> names.get(match.position()))
+                .thenComparingInt(match -> ids[match.position()]));
+        return matches.stream().mapToInt(match -> ids[match.position()]).toArray();
+    }
+
+    /** Number of names in the index
+     * @return how many names were added
+     */
+    public int size() {
+        return size;
+    }
+
+    private RoaringBitmap substringCandidates(String lowerQuery) {
+        if (lowerQuery.length() < 3) {
+            return RoaringBitmap.bitmapOfRange(0, size);
+        }
+        RoaringBitmap[] bitmaps = new RoaringBitmap[lowerQuery.length() - 2];
+        for (int i = 0; i < bitmaps.length; i++) {
+            bitmaps[i] = substringTrigrams.get(lowerQuery.substring(i, i + 3));
+            if (bitmaps[i] == null) {
+                return new RoaringBitmap();
+            }
+        }
+        return FastAggregation.and(bitmaps);
+    }
+
+    /** Helper function to count, with whole-bitmap and/or instead of a lookup per name, how many of the query's trigrams each name shares
+     * @param queryBitmaps bitmaps of the query's trigrams
+     * @return bitmaps where the one at index j holds the names sharing more than j of the trigrams
+     */
+    private static RoaringBitmap[] sharingAtLeast(RoaringBitmap[] queryBitmaps) {
+        RoaringBitmap[] sharing = new RoaringBitmap[queryBitmaps.length];
+        for (int j = 0; j < sharing.length; j++) {
+            sharing[j] = new RoaringBitmap();
+        }
+        for (int i = 0; i < queryBitmaps.length; i++) {
+            // after i bitmaps no name can share more than i trigrams yet
+            for (int j = i; j > 0; j--) {
+                sharing[j].or(RoaringBitmap.and(sharing[j - 1], queryBitmaps[i]));
+            }
+            sharing[0].or(queryBitmaps[i]);
+        }
+        return sharing;
+    }
+
+    private void collect(RoaringBitmap positions, int shared, String lowerQuery, int queryTrigramCount, List<Match> matches) {
+        positions.forEach((int position) -> {
+            String lowerName = lowerNames.get(position);
+            int rank = lowerName.startsWith(lowerQuery) ? 0 : lowerName.contains(lowerQuery) ? 1 : 2;
+            // pg_trgm's similarity: shared trigrams over the trigrams of both strings together
+            int union = queryTrigramCount + trigramCounts[position] - shared;
+            double similarity = union == 0 ? 0 : (double) shared / union;
+            if (rank < 2 || similarity >= SIMILARITY_THRESHOLD) {
+                matches.add(new Match(position, rank, similarity));
+            }
+        });
+    }
+
+    /** Helper function to split a lowercased string into trigrams the way pg_trgm does:
+     * words are runs of letters and digits, each padded with two spaces in front and one behind
+     * @param lower lowercased string
+     * @return its distinct trigrams
+     */
+    static Set<String> wordTrigrams(String lower) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String word : lower.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    private record Match(int position, int rank, double similarity) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.repository.PlanetRepository;
+import com.swapi.starwarsapi.repository.StarWarsCharacterRepository;
+import com.swapi.starwarsapi.repository.StarshipRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Name search behind GET /{planets|starships|characters}/search: prefix, substring and fuzzy matches, best matches first.
+ * On postgres it runs the repositories' searchIdsByName queries, served by GIN trigram indexes on the name columns
+ * that are created here at startup along with the pg_trgm extension.
+ * On any other database, or when the extension can't be created, it falls back to a NameNgramIndex per table, built on the first search
+ * and kept in the planetNames, starshipNames and characterNames caches, which every write to the table evicts
+ */
+@Component
+@Profile("!reactive")
+public class NameSearch implements SmartInitializingSingleton {
+    private static final Logger log = LoggerFactory.getLogger(NameSearch.class);
+    private static final List<String> TABLES = List.of("galaxy_planet", "starship_master", "star_wars_character");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlanetRepository planetRepository;
+    @Autowired
+    private StarshipRepository starshipRepository;
+    @Autowired
+    private StarWarsCharacterRepository starWarsCharacterRepository;
+
+    private boolean trigramIndexes;
+
+    /**
+     * A repository's searchIdsByName: ranked ids of the rows whose name matches the query
+     */
+    @FunctionalInterface
+    public interface TrigramQuery {
+        Page<Integer> searchIdsByName(String query, String prefixPattern, String substringPattern, Pageable pageable);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // runs once hibernate has created the tables
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            log.info("{} has no pg_trgm, name search uses in-memory trigram indexes", database);
+            return;
+        }
+        try {
+            jdbcTemplate.execute("create extension if not exists pg_trgm");
+            for (String table : TABLES) {
+                // concurrently, so an existing table keeps taking writes while its index is built
+                jdbcTemplate.execute("create index concurrently if not exists idx_" + table + "_name_trgm on " + table +
+                        " using gin (name gin_trgm_ops)");
+            }
+            trigramIndexes = true;
+        } catch (DataAccessException e) {
+            log.warn("Could not create the pg_trgm extension or its indexes, name search uses in-memory trigram indexes", e);
+        }
+    }
+
+    /** Finds one page of the ids whose name matches a query, with whichever index this database has
+     * @param query text to look for in the names
+     * @param pageable page number and page size, the order is always by relevance
+     * @param trigramQuery the repository's searchIdsByName, run on postgres
+     * @param ngramIndex the table's NameNgramIndex, used everywhere else
+     * @return Page of ids, best matches first, with the total count
+     */
+    public Page<Integer> searchIds(String query, Pageable pageable, TrigramQuery trigramQuery, Supplier<NameNgramIndex> ngramIndex) {
+        if (trigramIndexes) {
+            return trigramQuery.searchIdsByName(query, likeEscape(query) + "%", "%" + likeEscape(query) + "%", pageable);
+        }
+        int[] ids = ngramIndex.get().search(query);
+        int from = (int) Math.min(pageable.getOffset(), ids.length);
+        int to = Math.min(from + pageable.getPageSize(), ids.length);
+        return new PageImpl<>(Arrays.stream(ids, from, to).boxed().toList(), pageable, ids.length);
+    }
+
+    /** Trigram index over the Planet names, built with one streaming scan
+     * @return the index, cached until the next write to a Planet
+     */
+    // the index is cached until the next write, so with a replica configured it is built from the primary, see ReplicaDataSourceConfig
+    @Cacheable("planetNames")
+    @Transactional(readOnly = true)
+    public NameNgramIndex planetNames() {
+        return this.build(planetRepository.streamIdsAndNames());
+    }
+
+    /** Trigram index over the Starship names, built with one streaming scan
+     * @return the index, cached until the next write to a Starship
+     */
+    @Cacheable("starshipNames")
+    @Transactional(readOnly = true)
+    public NameNgramIndex starshipNames() {
+        return this.build(starshipRepository.streamIdsAndNames());
+    }
+
+    /** Trigram index over the StarWarsCharacter names, built with one streaming scan
+     * @return the index, cached until the next write to a StarWarsCharacter
+     */
+    @Cacheable("characterNames")
+    @Transactional(readOnly = true)
+    public NameNgramIndex characterNames() {
+        return this.build(starWarsCharacterRepository.streamIdsAndNames());
+    }
+
+    private NameNgramIndex build(Stream<Object[]> idsAndNames) {
+        NameNgramIndex index = new NameNgramIndex();
+        try (idsAndNames) {
+            idsAndNames.forEach(row -> index.add((int) row[0], (String) row[1]));
+        }
+        return index;
+    }
+
+    /** Helper function to make a query match itself literally inside a like pattern
+     * @param query text to look for
+     * @return the text with like's wildcards and its escape character escaped
+     */
+    private static String likeEscape(String query) {
+        return query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
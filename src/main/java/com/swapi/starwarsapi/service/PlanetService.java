@@ -1,44 +1,169 @@
 package com.swapi.starwarsapi.service;
 
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.PlanetFilter;
 import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.exceptions.UniqueViolations;
 import com.swapi.starwarsapi.model.Planet;
 import com.swapi.starwarsapi.repository.PlanetRepository;
+import com.swapi.starwarsapi.repository.PlanetSpecifications;
+import io.micrometer.core.annotation.Counted;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service for Planet
+ * Planets are read on every character write and almost never change, so lookups by id and name go through a
+ * read-through cache. Every write to a Planet drops the cached entries, misses are never cached.
  */
 @Service
+@Profile("!reactive")
+@Timed(value = "swapi.service", description = "Latency of the service methods")
+@Counted(value = "swapi.service.errors", recordFailuresOnly = true, description = "Service methods that threw, by exception type")
 public class PlanetService {
     @Autowired
     private PlanetRepository planetRepository;
+    @Autowired
+    private BatchSupport batchSupport;
+    @Autowired
+    private NameSearch nameSearch;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /** Service for creating a new Planet
      * @param planet Planet we want to persist
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
     public void save(Planet planet) throws ConflictException {
-        // I want to intercept records with duplicate names.
+        // the unique constraint rejects a taken name, see UniqueViolations
         // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validateName(planet.getName());
-        planetRepository.save(planet);
+        try {
+            planetRepository.saveAndFlush(planet);
+        } catch (DataIntegrityViolationException e) {
+            throw this.nameConflict(e, planet.getName());
+        }
+    }
+
+    /** Service for creating many new Planets at once
+     * @param planets Planets we want to persist
+     * @return one BatchItemResult per Planet, in request order. A rejected Planet doesn't stop the others from being created
+     */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
+    @Transactional
+    public List<BatchItemResult> saveAll(List<Planet> planets) {
+        BatchItemResult[] results = new BatchItemResult[planets.size()];
+
+        // annotation-driven validation and duplicates inside the batch itself
+        Map<String, Integer> indexByName = new LinkedHashMap<>();
+        for (int i = 0; i < planets.size(); i++) {
+            Planet planet = planets.get(i);
+            String violations = planet == null ? "planet cannot be null" : batchSupport.validate(planet);
+            if (violations != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.BAD_REQUEST, violations);
+            } else if (indexByName.putIfAbsent(planet.getName(), i) != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.CONFLICT,
+                        "planet with name " + planet.getName() + " appears more than once in the batch");
+            }
+        }
+
+        // then the names that are already taken, with one query per chunk instead of one per planet
+        Set<String> existingNames = batchSupport.findExisting(indexByName.keySet(), planetRepository::findExistingNames);
+        List<Planet> accepted = new ArrayList<>(indexByName.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(indexByName.size());
+        for (Map.Entry<String, Integer> entry : indexByName.entrySet()) {
+            if (existingNames.contains(entry.getKey())) {
+                results[entry.getValue()] = BatchItemResult.rejected(entry.getValue(), HttpStatus.CONFLICT,
+                        "planet with name " + entry.getKey() + " already exists");
+            } else {
+                accepted.add(planets.get(entry.getValue()));
+                acceptedIndexes.add(entry.getValue());
+            }
+        }
+
+        batchSupport.persistAll(accepted);
+        for (int i = 0; i < accepted.size(); i++) {
+            results[acceptedIndexes.get(i)] = BatchItemResult.created(acceptedIndexes.get(i), accepted.get(i).getId());
+        }
+        return Arrays.asList(results);
     }
 
+    // the reads run in read-only transactions: hibernate keeps no snapshot of what they load for dirty checking and never flushes,
+    // and when a replica is configured their connection comes from it
     /** Service for selecting all persisted Planet entities
      * @return List of Planet entities we want to get
      */
+    @Transactional(readOnly = true)
     public List<Planet> findAll() {
         return planetRepository.findAll();
     }
 
+    /** Service for selecting one page of persisted Planet entities
+     * @param pageable page number, page size and sort order we want
+     * @return Page of Planet entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<Planet> findAll(Pageable pageable) {
+        return planetRepository.findAll(pageable);
+    }
+
+    /** Service for selecting the Planet entities that come after a keyset cursor, ordered by id
+     * @param afterId id of the last Planet the client has already seen, 0 to start from the beginning
+     * @param pageable only the page size is used, keyset pages are always ordered by id
+     * @return Slice of Planet entities, without a total count
+     */
+    @Transactional(readOnly = true)
+    public Slice<Planet> findAllAfter(int afterId, Pageable pageable) {
+        return planetRepository.findByIdGreaterThan(afterId, PageRequest.of(0, pageable.getPageSize(), Sort.by("id")));
+    }
+
+    /** Service for streaming every persisted Planet, ordered by id
+     * @param consumer receives each Planet in turn. The Planet is detached right after, so the persistence context never grows
+     */
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<Planet> consumer) {
+        try (Stream<Planet> planets = planetRepository.streamAll()) {
+            planets.forEach(planet -> {
+                consumer.accept(planet);
+                entityManager.detach(planet);
+            });
+        }
+    }
+
     /** Service for finding Planet by id
      * @param id id of Planet we want to find
      * @return Planet if exists, null if not
      */
+    // the result is cached past this request, so with a replica configured it is read from the primary, see ReplicaDataSourceConfig
+    @Cacheable(cacheNames = "planetsById", key = "#id", unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<Planet> findById(Integer id) {
         return planetRepository.findById(id);
     }
@@ -47,34 +172,94 @@ public class PlanetService {
      * @param name name of Planet we want to find
      * @return Planet if exists, null if not
      */
+    // from the primary like findById
+    @Cacheable(cacheNames = "planetsByName", key = "#name", unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<Planet> findByName(String name) {
         return planetRepository.findByName(name);
     }
 
+    /** Service for searching Planets by name: prefix, substring and fuzzy matches, best matches first
+     * @param query text to look for in the names
+     * @param pageable page number and page size we want, the order is always by relevance
+     * @return Page of Planet entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<Planet> search(String query, Pageable pageable) {
+        Pageable byRelevance = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        Page<Integer> ids = nameSearch.searchIds(query.strip(), byRelevance, planetRepository::searchIdsByName, nameSearch::planetNames);
+        return batchSupport.findPage(ids, planetRepository::findAllById, Planet::getId);
+    }
+
+    /** Service for selecting one page of the Planet entities matching a filter
+     * @param filter climate to match and population range to stay in, the conditions left null are ignored
+     * @param pageable page number, page size and sort order we want. Ties are broken by id, so pages never overlap
+     * @return Page of Planet entities, with the total count
+     * @throws BadRequestException Exception thrown when minPopulation is greater than maxPopulation
+     */
+    @Transactional(readOnly = true)
+    public Page<Planet> filter(PlanetFilter filter, Pageable pageable) throws BadRequestException {
+        if (filter.minPopulation() != null && filter.maxPopulation() != null && filter.minPopulation() > filter.maxPopulation()) {
+            throw new BadRequestException("minPopulation cannot be greater than maxPopulation");
+        }
+        Sort sort = pageable.getSort().getOrderFor("id") == null ? pageable.getSort().and(Sort.by("id")) : pageable.getSort();
+        return planetRepository.findAll(PlanetSpecifications.matching(filter), PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort));
+    }
+
+    /** Service for finding many Planets by id at once
+     * @param ids ids of Planets we want to find
+     * @return List of the Planets that exist, in no particular order
+     */
+    @Transactional(readOnly = true)
+    public List<Planet> findAllById(Collection<Integer> ids) {
+        return batchSupport.findAll(ids, planetRepository::findAllById);
+    }
+
+    /** Service for checking which of the given Planet ids exist
+     * @param ids ids of Planets we want to check
+     * @return Set of the given ids that belong to persisted Planets
+     */
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(planetRepository.findExistingIds(ids));
+    }
+
     /** Service for updating Planet by id
      * @param id id of Planet we want to modify
      * @param planet Planet that contains the data we want to modify
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
     public void updateById(Integer id, Planet planet) throws ConflictException {
-        // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validatePlanetExists(id);
-        planetRepository.updateById(id, planet.getName(), planet.getClimate(), planet.getPopulation());
+        int updated;
+        try {
+            updated = planetRepository.updateById(id, planet.getName(), planet.getClimate(), planet.getPopulation());
+        } catch (DataIntegrityViolationException e) {
+            // renaming onto a name that is already taken
+            throw this.nameConflict(e, planet.getName());
+        }
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, id);
     }
 
     /** Service for updating Planet by name
      * @param planet Planet that contains the data we want to modify
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
     public void updateByName(Planet planet) throws ConflictException {
-        // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validatePlanetExists(planet.getName());
-        planetRepository.updateByName(planet.getName(), planet.getClimate(), planet.getPopulation());
+        int updated = planetRepository.updateByName(planet.getName(), planet.getClimate(), planet.getPopulation());
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, planet.getName());
     }
 
     /** Service for deleting Planet by id
      * @param id id of Planet wa want to delete
      */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
+    @Transactional
     public void deleteById(Integer id) {
         planetRepository.deleteById(id);
     }
@@ -82,6 +267,8 @@ public class PlanetService {
     /** Service for deleting Planet by name
      * @param name name of Planet wa want to delete
      */
+    @CacheEvict(cacheNames = {"planetsById", "planetsByName", "planetNames"}, allEntries = true)
+    @Transactional
     public void deleteByName(String name) {
         planetRepository.deleteByName(name);
     }
@@ -89,35 +276,39 @@ public class PlanetService {
     // Basic error handling is already taken care of by annotations in the model
     // More advanced error handling is done here
 
-    /** Helper function to weed out duplicates
-     * @param name name of Planet we want to validate
-     * @throws ConflictException Custom exception and http response to catch duplicate records
+    /** Helper function to turn a broken unique constraint on name into my 409
+     * @param e exception thrown by the insert or update
+     * @param name name of Planet we tried to write
+     * @return ConflictException to throw when the name is already taken
+     * @throws DataIntegrityViolationException the original exception, when it broke a different constraint
      */
-    private void validateName(String name) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findByName(name).isPresent()) {
-            throw new ConflictException("planet with name " + name + " already exists");
+    private ConflictException nameConflict(DataIntegrityViolationException e, String name) {
+        if (!UniqueViolations.isNameViolation(e)) {
+            throw e;
         }
+        return new ConflictException("planet with name " + name + " already exists");
     }
 
-    /** Helper function to weed out missing Planets
-     * @param name name of Planet we want to validate
+    /** Helper function to weed out missing Planets, using the row count of the update itself
+     * @param updated number of rows the update by name touched
+     * @param name name of Planet we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validatePlanetExists(String name) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findByName(name).isEmpty()) {
+    private void validateUpdated(int updated, String name) throws ConflictException {
+        // Checking the count instead of looking the planet up first saves a round trip,
+        // and there is no window for the planet to disappear between the check and the update
+        if (updated == 0) {
             throw new ConflictException("planet with name " + name + " does not exist");
         }
     }
 
-    /** Helper function to weed out missing Planets
-     * @param id id of Planet we want to validate
+    /** Helper function to weed out missing Planets, using the row count of the update itself
+     * @param updated number of rows the update by id touched
+     * @param id id of Planet we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validatePlanetExists(int id) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findById(id).isEmpty()) {
+    private void validateUpdated(int updated, int id) throws ConflictException {
+        if (updated == 0) {
             throw new ConflictException("planet with id " + id + " does not exist");
         }
     }
@@ -1,55 +1,368 @@
 package com.swapi.starwarsapi.service;
 
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.CharacterSummary;
+import com.swapi.starwarsapi.dto.ExpandedCharacter;
+import com.swapi.starwarsapi.model.CharacterStarship;
+import com.swapi.starwarsapi.model.Planet;
 import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.repository.CharacterStarshipRepository;
 import com.swapi.starwarsapi.repository.StarWarsCharacterRepository;
 import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.exceptions.UniqueViolations;
+import io.micrometer.core.annotation.Counted;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.apache.coyote.BadRequestException;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service for StarWarsCharacter
  */
 @Service
+@Profile("!reactive")
+@Timed(value = "swapi.service", description = "Latency of the service methods")
+@Counted(value = "swapi.service.errors", recordFailuresOnly = true, description = "Service methods that threw, by exception type")
 public class StarWarsCharacterService {
     private static final Logger log = LoggerFactory.getLogger(StarWarsCharacterService.class);
+    // references a request can ask to have resolved with ?expand=
+    private static final Set<String> EXPANSIONS = Set.of("homePlanet", "starships");
     @Autowired
     private StarWarsCharacterRepository starWarsCharacterRepository;
     @Autowired
+    private CharacterStarshipRepository characterStarshipRepository;
+    @Autowired
+    private BatchSupport batchSupport;
+    @Autowired
+    private NameSearch nameSearch;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
     private StarshipService starshipService;
     @Autowired
     private PlanetService planetService;
+    @Autowired
+    private StarshipPilotIndex starshipPilotIndex;
 
     /** Service for creating a new StarWarsCharacter
      * @param character StarWarsCharacter we want to persist
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
     public void save(StarWarsCharacter character) throws BadRequestException, ConflictException {
-        // My 409 error is more appropriate than the auto-generated 500 errors for character name and homePlanetId
+        // My 409 error is more appropriate than the auto-generated 500 errors for homePlanetId
         // I then verify the starship array is properly formatted and entities for each key exist
-        this.validateName(character.getName());
         this.validateHomePlanetId(character.getHomePlanetId());
         this.validateStarships(character.getStarships());
-        starWarsCharacterRepository.save(character);
+
+        // the unique constraint rejects a taken name, see UniqueViolations
+        try {
+            starWarsCharacterRepository.saveAndFlush(character);
+        } catch (DataIntegrityViolationException e) {
+            throw this.nameConflict(e, character.getName());
+        }
+        characterStarshipRepository.saveAll(this.toMemberships(character.getId(), character.getStarships()));
+        starshipPilotIndex.add(character.getId(), character.getStarships());
+    }
+
+    /** Service for creating many new StarWarsCharacters at once
+     * @param characters StarWarsCharacters we want to persist
+     * @return one BatchItemResult per StarWarsCharacter, in request order. A rejected StarWarsCharacter doesn't stop the others from being created
+     */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
+    public List<BatchItemResult> saveAll(List<StarWarsCharacter> characters) {
+        BatchItemResult[] results = new BatchItemResult[characters.size()];
+
+        // annotation-driven validation, id formats and duplicates inside the batch itself
+        Map<String, Integer> indexByName = new LinkedHashMap<>();
+        for (int i = 0; i < characters.size(); i++) {
+            StarWarsCharacter character = characters.get(i);
+            String violations = character == null ? "character cannot be null" : batchSupport.validate(character);
+            if (violations == null && character.getHomePlanetId() <= 0) {
+                violations = "homePlanetId must be a positive integer";
+            }
+            if (violations == null && character.getStarships().stream().anyMatch(id -> id == null || id < 1)) {
+                violations = "starships must contain positive integers";
+            }
+            if (violations != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.BAD_REQUEST, violations);
+            } else if (indexByName.putIfAbsent(character.getName(), i) != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.CONFLICT,
+                        "character with name " + character.getName() + " appears more than once in the batch");
+            }
+        }
+
+        // then resolve names, home planets and starships for the whole batch,
+        // with one query per chunk instead of one per character or per starship
+        Set<Integer> planetIds = new HashSet<>();
+        Set<Integer> starshipIds = new HashSet<>();
+        for (int index : indexByName.values()) {
+            planetIds.add(characters.get(index).getHomePlanetId());
+            starshipIds.addAll(characters.get(index).getStarships());
+        }
+        Set<String> existingNames = batchSupport.findExisting(indexByName.keySet(), starWarsCharacterRepository::findExistingNames);
+        Set<Integer> existingPlanetIds = batchSupport.findExisting(planetIds, planetService::findExistingIds);
+        Set<Integer> existingStarshipIds = batchSupport.findExisting(starshipIds, starshipService::findExistingIds);
+
+        List<StarWarsCharacter> accepted = new ArrayList<>(indexByName.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(indexByName.size());
+        for (Map.Entry<String, Integer> entry : indexByName.entrySet()) {
+            int index = entry.getValue();
+            StarWarsCharacter character = characters.get(index);
+            Set<Integer> missingStarships = new TreeSet<>(character.getStarships());
+            missingStarships.removeAll(existingStarshipIds);
+            if (existingNames.contains(entry.getKey())) {
+                results[index] = BatchItemResult.rejected(index, HttpStatus.CONFLICT,
+                        "character with name " + entry.getKey() + " already exists");
+            } else if (!existingPlanetIds.contains(character.getHomePlanetId())) {
+                results[index] = BatchItemResult.rejected(index, HttpStatus.CONFLICT,
+                        "planet with id " + character.getHomePlanetId() + " does not exist");
+            } else if (!missingStarships.isEmpty()) {
+                results[index] = BatchItemResult.rejected(index, HttpStatus.CONFLICT,
+                        "starships with ids " + missingStarships + " do not exist");
+            } else {
+                accepted.add(character);
+                acceptedIndexes.add(index);
+            }
+        }
+
+        // the characters have their ids once they are persisted, so their starships go in a second round of batches
+        batchSupport.persistAll(accepted);
+        List<CharacterStarship> memberships = new ArrayList<>();
+        for (int i = 0; i < accepted.size(); i++) {
+            results[acceptedIndexes.get(i)] = BatchItemResult.created(acceptedIndexes.get(i), accepted.get(i).getId());
+            memberships.addAll(this.toMemberships(accepted.get(i).getId(), accepted.get(i).getStarships()));
+            starshipPilotIndex.add(accepted.get(i).getId(), accepted.get(i).getStarships());
+        }
+        batchSupport.persistAll(memberships);
+        return Arrays.asList(results);
     }
 
     /** Service for selecting all persisted StarWarsCharacter entities
      * @return List of StarWarsCharacter entities we want to get
      */
+    @Transactional(readOnly = true)
     public List<StarWarsCharacter> findAll() {
         return starWarsCharacterRepository.findAll();
     }
 
+    /** Service for selecting one page of persisted StarWarsCharacter entities
+     * @param pageable page number, page size and sort order we want
+     * @return Page of StarWarsCharacter entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<StarWarsCharacter> findAll(Pageable pageable) {
+        return starWarsCharacterRepository.findAll(pageable);
+    }
+
+    /** Service for selecting the StarWarsCharacter entities that come after a keyset cursor, ordered by id
+     * @param afterId id of the last StarWarsCharacter the client has already seen, 0 to start from the beginning
+     * @param pageable only the page size is used, keyset pages are always ordered by id
+     * @return Slice of StarWarsCharacter entities, without a total count
+     */
+    @Transactional(readOnly = true)
+    public Slice<StarWarsCharacter> findAllAfter(int afterId, Pageable pageable) {
+        return starWarsCharacterRepository.findByIdGreaterThan(afterId, PageRequest.of(0, pageable.getPageSize(), Sort.by("id")));
+    }
+
+    /** Service for selecting one page of the StarWarsCharacter entities that fly a starship
+     * @param starshipId id of the starship whose pilots we want
+     * @param pageable page number, page size and sort order we want
+     * @return Page of StarWarsCharacter entities, with the total count
+     * @throws ConflictException Custom exception and http response to catch a missing starship
+     */
+    @Transactional(readOnly = true)
+    public Page<StarWarsCharacter> findByStarshipId(int starshipId, Pageable pageable) throws ConflictException {
+        // an unknown starship gets the same 409 as everywhere else, instead of an empty page that looks like "no pilots"
+        if (starshipService.findById(starshipId).isEmpty()) {
+            throw new ConflictException("starship with id " + starshipId + " does not exist");
+        }
+        return starWarsCharacterRepository.findByStarshipId(starshipId, pageable);
+    }
+
+    /** Service for selecting one page of the StarWarsCharacter entities that live on a planet
+     * @param homePlanetId id of the planet whose residents we want
+     * @param pageable page number, page size and sort order we want
+     * @return Page of CharacterSummary projections, with the total count
+     * @throws ConflictException Custom exception and http response to catch a missing planet
+     */
+    @Transactional(readOnly = true)
+    public Page<CharacterSummary> findByHomePlanetId(int homePlanetId, Pageable pageable) throws ConflictException {
+        if (planetService.findById(homePlanetId).isEmpty()) {
+            throw new ConflictException("planet with id " + homePlanetId + " does not exist");
+        }
+        return starWarsCharacterRepository.findSummariesByHomePlanetId(homePlanetId, pageable);
+    }
+
+    /** Service for finding the StarWarsCharacters that fly every one of the given starships, answered by StarshipPilotIndex without a query
+     * @param starshipIds ids of the starships
+     * @return ids of the StarWarsCharacters, ascending
+     * @throws BadRequestException Exception thrown for an empty list or an id that isn't positive
+     */
+    public int[] findIdsFlyingAll(List<Integer> starshipIds) throws BadRequestException {
+        this.validateStarshipQuery(starshipIds);
+        return starshipPilotIndex.flyingAll(starshipIds);
+    }
+
+    /** Service for finding the StarWarsCharacters that fly at least one of the given starships, answered by StarshipPilotIndex without a query
+     * @param starshipIds ids of the starships
+     * @return ids of the StarWarsCharacters, ascending
+     * @throws BadRequestException Exception thrown for an empty list or an id that isn't positive
+     */
+    public int[] findIdsFlyingAny(List<Integer> starshipIds) throws BadRequestException {
+        this.validateStarshipQuery(starshipIds);
+        return starshipPilotIndex.flyingAny(starshipIds);
+    }
+
+    /** Service for counting the StarWarsCharacters that fly each starship, answered by StarshipPilotIndex without a query
+     * @param starshipIds ids of the starships to count, every starship with at least one pilot when null
+     * @return pilot count by starship id, ordered by starship id
+     * @throws BadRequestException Exception thrown for an id that isn't positive
+     */
+    public Map<Integer, Integer> countPilots(List<Integer> starshipIds) throws BadRequestException {
+        if (starshipIds == null) {
+            return starshipPilotIndex.pilotCounts(List.of());
+        }
+        this.validateStarshipQuery(starshipIds);
+        return starshipPilotIndex.pilotCounts(starshipIds);
+    }
+
+    /** Service for resolving the references of StarWarsCharacters
+     * @param characters StarWarsCharacters we want to expand
+     * @param expand references to resolve, homePlanet and/or starships
+     * @return one ExpandedCharacter per StarWarsCharacter, in the same order
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @Transactional(readOnly = true)
+    public List<ExpandedCharacter> expand(List<StarWarsCharacter> characters, Set<String> expand) throws BadRequestException {
+        this.validateExpand(expand);
+
+        // the planet and starship lookups join this transaction, so both run on one read-only connection
+        // the references of every character are collected first, then each kind is resolved with a single IN query,
+        // so expanding costs the same two extra queries for one character or a thousand
+        Map<Integer, Planet> planets = new HashMap<>();
+        if (expand.contains("homePlanet")) {
+            Set<Integer> planetIds = new HashSet<>();
+            for (StarWarsCharacter character : characters) {
+                planetIds.add(character.getHomePlanetId());
+            }
+            // the characters already hold lazy proxies of their planets, and the persistence context hands those same proxies back.
+            // The query has initialized them, unproxying just gets the plain Planet that jackson can serialize
+            for (Planet planet : planetService.findAllById(planetIds)) {
+                planets.put(planet.getId(), Hibernate.unproxy(planet, Planet.class));
+            }
+        }
+        Map<Integer, Starship> starships = new HashMap<>();
+        if (expand.contains("starships")) {
+            Set<Integer> starshipIds = new HashSet<>();
+            for (StarWarsCharacter character : characters) {
+                starshipIds.addAll(character.getStarships());
+            }
+            for (Starship starship : starshipService.findAllById(starshipIds)) {
+                starships.put(starship.getId(), starship);
+            }
+        }
+
+        List<ExpandedCharacter> expanded = new ArrayList<>(characters.size());
+        for (StarWarsCharacter character : characters) {
+            List<Starship> characterStarships = null;
+            if (expand.contains("starships")) {
+                characterStarships = new ArrayList<>(character.getStarships().size());
+                for (Integer starshipId : character.getStarships()) {
+                    characterStarships.add(starships.get(starshipId));
+                }
+            }
+            expanded.add(ExpandedCharacter.of(character, planets.get(character.getHomePlanetId()), characterStarships));
+        }
+        return expanded;
+    }
+
+    /** Service for resolving the references of a StarWarsCharacter that may not exist
+     * @param character StarWarsCharacter we want to expand, if found
+     * @param expand references to resolve, homePlanet and/or starships
+     * @return ExpandedCharacter if the StarWarsCharacter exists, null if not
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @Transactional(readOnly = true)
+    public Optional<ExpandedCharacter> expand(Optional<StarWarsCharacter> character, Set<String> expand) throws BadRequestException {
+        List<ExpandedCharacter> expanded = this.expand(character.stream().toList(), expand);
+        return expanded.stream().findFirst();
+    }
+
+    /** Service for resolving the references of one page of StarWarsCharacters
+     * @param page Page of StarWarsCharacters we want to expand
+     * @param expand references to resolve, homePlanet and/or starships
+     * @return Page of ExpandedCharacters, with the same paging and total count
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @Transactional(readOnly = true)
+    public Page<ExpandedCharacter> expand(Page<StarWarsCharacter> page, Set<String> expand) throws BadRequestException {
+        return new PageImpl<>(this.expand(page.getContent(), expand), page.getPageable(), page.getTotalElements());
+    }
+
+    /** Service for resolving the references of one keyset slice of StarWarsCharacters
+     * @param slice Slice of StarWarsCharacters we want to expand
+     * @param expand references to resolve, homePlanet and/or starships
+     * @return Slice of ExpandedCharacters, with the same paging
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    @Transactional(readOnly = true)
+    public Slice<ExpandedCharacter> expand(Slice<StarWarsCharacter> slice, Set<String> expand) throws BadRequestException {
+        return new SliceImpl<>(this.expand(slice.getContent(), expand), slice.getPageable(), slice.hasNext());
+    }
+
+    /** Service for streaming every persisted StarWarsCharacter, ordered by id
+     * @param consumer receives each StarWarsCharacter in turn. The StarWarsCharacter is detached right after, so the persistence context never grows
+     */
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<StarWarsCharacter> consumer) {
+        try (Stream<StarWarsCharacter> characters = starWarsCharacterRepository.streamAll()) {
+            characters.forEach(character -> {
+                consumer.accept(character);
+                entityManager.detach(character);
+            });
+        }
+    }
+
     /** Service for finding StarWarsCharacter by id
      * @param id id of StarWarsCharacter we want to find
      * @return StarWarsCharacter if exists, null if not
      */
+    @Transactional(readOnly = true)
     public Optional<StarWarsCharacter> findById(Integer id) {
         return starWarsCharacterRepository.findById(id);
     }
@@ -58,29 +371,49 @@ public class StarWarsCharacterService {
      * @param name name of StarWarsCharacter we want to find
      * @return StarWarsCharacter if exists, null if not
      */
+    @Transactional(readOnly = true)
     public Optional<StarWarsCharacter> findByName(String name) {
         return starWarsCharacterRepository.findByName(name);
     }
 
+    /** Service for searching StarWarsCharacters by name: prefix, substring and fuzzy matches, best matches first
+     * @param query text to look for in the names
+     * @param pageable page number and page size we want, the order is always by relevance
+     * @return Page of StarWarsCharacter entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<StarWarsCharacter> search(String query, Pageable pageable) {
+        Pageable byRelevance = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        Page<Integer> ids = nameSearch.searchIds(query.strip(), byRelevance, starWarsCharacterRepository::searchIdsByName, nameSearch::characterNames);
+        return batchSupport.findPage(ids, starWarsCharacterRepository::findAllById, StarWarsCharacter::getId);
+    }
+
     /** Service for updating StarWarsCharacter by id
      * @param id id of StarWarsCharacter we want to modify
      * @param character StarWarsCharacter that contains the data we want to modify
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
     public void updateById(Integer id, StarWarsCharacter character) throws BadRequestException, ConflictException {
-        // Verify that the character to update exists
-        this.validateCharacterExists(id);
-
         // Verify that the starships array is in the expected format, then update the record
         // The annotation-driven validation only handles simple cases and data types
         this.validateStarships(character.getStarships());
-        starWarsCharacterRepository.updateById(
-            id,
-            character.getName(),
-            character.getHomePlanetId(),
-            character.getStarships()
-        );
+        int updated;
+        try {
+            updated = starWarsCharacterRepository.updateById(
+                id,
+                character.getName(),
+                character.getHomePlanetId()
+            );
+        } catch (DataIntegrityViolationException e) {
+            // renaming onto a name that is already taken
+            throw this.nameConflict(e, character.getName());
+        }
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, id);
+        this.replaceStarships(id, character.getStarships());
     }
 
     /** Service for updating StarWarsCharacter by name
@@ -88,70 +421,118 @@ public class StarWarsCharacterService {
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
     public void updateByName(StarWarsCharacter character) throws BadRequestException, ConflictException {
-        // Verify that the character to update exists
-        this.validateCharacterExists(character.getName());
-
         // Verify that the starships array is in the expected format, then update the record
         // The annotation-driven validation only handles simple cases and data types
         this.validateStarships(character.getStarships());
-        starWarsCharacterRepository.updateByName(
+        int updated = starWarsCharacterRepository.updateByName(
             character.getName(),
-            character.getHomePlanetId(),
-            character.getStarships()
+            character.getHomePlanetId()
         );
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, character.getName());
+
+        // the update holds the row lock until commit, so the character can't disappear before its id is read
+        int id = starWarsCharacterRepository.findIdByName(character.getName()).orElseThrow();
+        this.replaceStarships(id, character.getStarships());
     }
 
     /** Service for deleting StarWarsCharacter by id
      * @param id id of StarWarsCharacter wa want to delete
      */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
     public void deleteById(Integer id) {
         starWarsCharacterRepository.deleteById(id);
+        starshipPilotIndex.removeCharacter(id);
     }
 
     /** Service for deleting StarWarsCharacter by name
      * @param name name of StarWarsCharacter wa want to delete
      */
+    @CacheEvict(cacheNames = "characterNames", allEntries = true)
+    @Transactional
     public void deleteByName(String name) {
+        // the pilot index is keyed by id, so the id is read before the row goes
+        starWarsCharacterRepository.findIdByName(name).ifPresent(starshipPilotIndex::removeCharacter);
         starWarsCharacterRepository.deleteByName(name);
     }
 
+    /** Helper function to swap the starships of an existing StarWarsCharacter
+     * @param id id of StarWarsCharacter whose starships we replace
+     * @param starships ids of the starships the StarWarsCharacter flies from now on
+     */
+    private void replaceStarships(int id, List<Integer> starships) {
+        characterStarshipRepository.deleteByCharacterId(id);
+        characterStarshipRepository.saveAll(this.toMemberships(id, starships));
+        starshipPilotIndex.replace(id, starships);
+    }
+
+    /** Helper function to build the character_starship rows of a StarWarsCharacter
+     * @param id id of the StarWarsCharacter
+     * @param starships ids of the starships it flies, already deduped by StarWarsCharacter.setStarships
+     * @return one CharacterStarship per starship id
+     */
+    private List<CharacterStarship> toMemberships(int id, List<Integer> starships) {
+        List<CharacterStarship> memberships = new ArrayList<>(starships.size());
+        for (int starshipId : starships) {
+            memberships.add(new CharacterStarship(id, starshipId));
+        }
+        return memberships;
+    }
+
     // Basic error handling is already taken care of by annotations in the model
     // More advanced error handling is done here
 
-    /** Helper function to weed out duplicates
-     * @param name name of StarWarsCharacter we want to validate
-     * @throws ConflictException Custom exception and http response to catch duplicate records
+    /** Helper function to turn a broken unique constraint on name into my 409
+     * @param e exception thrown by the insert or update
+     * @param name name of StarWarsCharacter we tried to write
+     * @return ConflictException to throw when the name is already taken
+     * @throws DataIntegrityViolationException the original exception, when it broke a different constraint
      */
-    private void validateName(String name) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findByName(name).isPresent()) {
-            throw new ConflictException("character with name " + name + " already exists");
+    private ConflictException nameConflict(DataIntegrityViolationException e, String name) {
+        if (!UniqueViolations.isNameViolation(e)) {
+            throw e;
         }
+        return new ConflictException("character with name " + name + " already exists");
     }
 
-    /** Helper function to weed out missing StarWarsCharacters
-     * @param name name of StarWarsCharacter we want to validate
+    /** Helper function to weed out missing StarWarsCharacters, using the row count of the update itself
+     * @param updated number of rows the update by name touched
+     * @param name name of StarWarsCharacter we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validateCharacterExists(String name) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findByName(name).isEmpty()) {
+    private void validateUpdated(int updated, String name) throws ConflictException {
+        if (updated == 0) {
             throw new ConflictException("character with name " + name + " does not exist");
         }
     }
 
-    /** Helper function to weed out missing StarWarsCharacters
-     * @param id id of StarWarsCharacter we want to validate
+    /** Helper function to weed out missing StarWarsCharacters, using the row count of the update itself
+     * @param updated number of rows the update by id touched
+     * @param id id of StarWarsCharacter we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validateCharacterExists(int id) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findById(id).isEmpty()) {
+    private void validateUpdated(int updated, int id) throws ConflictException {
+        if (updated == 0) {
             throw new ConflictException("character with id " + id + " does not exist");
         }
     }
 
+    /** Helper function to reject expansions we don't know how to resolve
+     * @param expand references a request asked to resolve
+     * @throws BadRequestException Exception thrown for an unknown expansion
+     */
+    private void validateExpand(Set<String> expand) throws BadRequestException {
+        for (String expansion : expand) {
+            if (!EXPANSIONS.contains(expansion)) {
+                throw new BadRequestException("expand only accepts homePlanet and starships, not " + expansion);
+            }
+        }
+    }
+
     /** Helper function to verify format and value of homePlanetId
      * @param homePlanetId homePlanetId we want to verify value and type for
      * @throws BadRequestException Exception thrown for bad Json
@@ -170,6 +551,21 @@ public class StarWarsCharacterService {
         }
     }
 
+    /** Helper function to verify the starship ids of a pilot query
+     * @param starshipIds starship ids found in the request's parameters
+     * @throws BadRequestException Exception thrown for an empty list or an id that isn't positive
+     */
+    private void validateStarshipQuery(List<Integer> starshipIds) throws BadRequestException {
+        if (starshipIds.isEmpty()) {
+            throw new BadRequestException("starships cannot be empty");
+        }
+        for (Integer starshipId : starshipIds) {
+            if (starshipId == null || starshipId < 1) {
+                throw new BadRequestException("starships must contain positive integers");
+            }
+        }
+    }
+
     /** Helper function to verify format and value of starships
      * @param starships starships whose structure and values we want to validate
      * @throws BadRequestException Exception thrown for custom format validation
@@ -181,13 +577,26 @@ public class StarWarsCharacterService {
         if (starships == null) {
             throw new BadRequestException("starships cannot be null");
         }
-        for (int starshipId : starships) {
-            if (starshipId < 1) {
+
+        // dedupe the ids first, so a character listing the same starship twice doesn't cost an extra lookup
+        Set<Integer> starshipIds = new TreeSet<>();
+        for (Integer starshipId : starships) {
+            if (starshipId == null || starshipId < 1) {
                 throw new BadRequestException("starships must contain positive integers");
             }
-            else if (starshipService.findById(starshipId).isEmpty()) {
-                throw new ConflictException("starship with id " + starshipId + "does not exist");
-            }
+            starshipIds.add(starshipId);
+        }
+        if (starshipIds.isEmpty()) {
+            return;
+        }
+
+        // resolve the ids with one query per chunk instead of one findById per starship, see BatchSupport,
+        // then report all the missing ones at once
+        starshipIds.removeAll(batchSupport.findExisting(starshipIds, starshipService::findExistingIds));
+        if (starshipIds.size() == 1) {
+            throw new ConflictException("starship with id " + starshipIds.iterator().next() + " does not exist");
+        } else if (!starshipIds.isEmpty()) {
+            throw new ConflictException("starships with ids " + starshipIds + " do not exist");
         }
     }
 }
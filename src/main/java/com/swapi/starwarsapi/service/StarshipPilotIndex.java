@@ -0,0 +1,307 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.dto.MembershipFingerprint;
+import com.swapi.starwarsapi.repository.CharacterStarshipRepository;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index of character_starship: for every starship, a compressed bitmap of the ids of the characters flying it,
+ * and the other way around for every character, so a character is dropped without looking through every starship.
+ * Set questions over pilots (who flies all of these starships, who flies any of them, how many fly each) are answered from it without a query.
+ * It is rebuilt with one streaming scan of character_starship when the application starts, before requests are served,
+ * then kept in sync by StarWarsCharacterService and StarshipService once their transactions commit, so a rolled back write never shows up in it.
+ * Writes made to the database by anything else, like another instance of the api, are picked up by refresh:
+ * every app.pilot-index.refresh-interval it compares a fingerprint of character_starship with the one the index holds, and rebuilds when they differ.
+ * Local changes move the held fingerprint the same way they move the table, so only writes from elsewhere cause a rebuild.
+ * Local changes committed while a rebuild scans are logged and replayed onto its result before it is swapped in, the scan may have missed them
+ */
+@Component
+@Profile("!reactive")
+public class StarshipPilotIndex implements SmartInitializingSingleton {
+    private static final Logger log = LoggerFactory.getLogger(StarshipPilotIndex.class);
+
+    // bitmaps are mutated in place by writes, so every access goes through the lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, RoaringBitmap> pilotsByStarship = new HashMap<>();
+    private Map<Integer, RoaringBitmap> starshipsByPilot = new HashMap<>();
+    // changes applied while a rebuild scans, null when no rebuild runs
+    private List<Runnable> changesDuringRebuild;
+    // fingerprint of character_starship as the bitmaps have it, null until the first rebuild
+    private volatile MembershipFingerprint fingerprint;
+
+    @Autowired
+    private CharacterStarshipRepository characterStarshipRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        this.rebuild();
+    }
+
+    /** Rebuilds the index when character_starship was changed by something other than this instance
+     * @return true if it rebuilt, ignored by the scheduler
+     */
+    @Scheduled(initialDelayString = "${app.pilot-index.refresh-interval}", fixedDelayString = "${app.pilot-index.refresh-interval}")
+    public boolean refresh() {
+        MembershipFingerprint current = this.primaryTransaction().execute(status -> characterStarshipRepository.fingerprint());
+        if (current.equals(fingerprint)) {
+            return false;
+        }
+        this.rebuild();
+        return true;
+    }
+
+    /** Replaces the whole index with the memberships currently in the database, read with one forward-only cursor */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        this.underWriteLock(() -> changesDuringRebuild = new ArrayList<>());
+        try {
+            Map<Integer, RoaringBitmap> rebuilt = new HashMap<>();
+            Map<Integer, RoaringBitmap> rebuiltByPilot = new HashMap<>();
+            MembershipFingerprint[] readAt = new MembershipFingerprint[1];
+            // postgres only streams inside a transaction
+            long memberships = this.primaryTransaction().execute(status -> {
+                // taken before the scan: a write landing during it leaves the fingerprint behind, so the next refresh rebuilds again
+                readAt[0] = characterStarshipRepository.fingerprint();
+                long rows = 0;
+                try (Stream<Object[]> ids = characterStarshipRepository.streamAllIds()) {
+                    for (Object[] membership : (Iterable<Object[]>) ids::iterator) {
+                        rebuilt.computeIfAbsent((Integer) membership[1], starshipId -> new RoaringBitmap()).add((int) membership[0]);
+                        rebuiltByPilot.computeIfAbsent((Integer) membership[0], characterId -> new RoaringBitmap()).add((int) membership[1]);
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            rebuilt.values().forEach(RoaringBitmap::runOptimize);
+
+            int[] replayed = new int[1];
+            this.underWriteLock(() -> {
+                pilotsByStarship = rebuilt;
+                starshipsByPilot = rebuiltByPilot;
+                fingerprint = readAt[0];
+                // every change sets the memberships it touches, so applying one the scan already saw again changes nothing
+                changesDuringRebuild.forEach(Runnable::run);
+                replayed[0] = changesDuringRebuild.size();
+            });
+            log.info("Rebuilt the starship pilot index from {} memberships of {} starships in {} ms, replaying {} changes made meanwhile",
+                    memberships, rebuilt.size(), (System.nanoTime() - start) / 1_000_000, replayed[0]);
+        } finally {
+            this.underWriteLock(() -> changesDuringRebuild = null);
+        }
+    }
+
+    /** Adds the starships of a new character, once the current transaction commits
+     * @param characterId id of the character
+     * @param starships ids of the starships it flies
+     */
+    public void add(int characterId, Collection<Integer> starships) {
+        this.afterCommit(() -> this.addPilot(characterId, starships));
+    }
+
+    /** Swaps the starships of an existing character, once the current transaction commits
+     * @param characterId id of the character
+     * @param starships ids of the starships it flies from now on
+     */
+    public void replace(int characterId, Collection<Integer> starships) {
+        this.afterCommit(() -> {
+            this.removePilot(characterId);
+            this.addPilot(characterId, starships);
+        });
+    }
+
+    /** Drops a deleted character, once the current transaction commits
+     * @param characterId id of the character
+     */
+    public void removeCharacter(int characterId) {
+        this.afterCommit(() -> this.removePilot(characterId));
+    }
+
+    /** Drops a deleted starship, whose memberships the database cascaded away, once the current transaction commits
+     * @param starshipId id of the starship
+     */
+    public void removeStarship(int starshipId) {
+        this.afterCommit(() -> {
+            RoaringBitmap pilots = pilotsByStarship.remove(starshipId);
+            if (pilots != null) {
+                pilots.forEach((int characterId) -> {
+                    this.removeId(starshipsByPilot, characterId, starshipId);
+                    this.moveFingerprint(characterId, starshipId, -1);
+                });
+            }
+        });
+    }
+
+    /** Characters flying every one of the given starships
+     * @param starshipIds ids of the starships, at least one
+     * @return ids of the characters, ascending
+     */
+    public int[] flyingAll(Collection<Integer> starshipIds) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[starshipIds.size()];
+            int i = 0;
+            for (int starshipId : starshipIds) {
+                RoaringBitmap pilots = pilotsByStarship.get(starshipId);
+                if (pilots == null) {
+                    // a starship nobody flies empties the intersection
+                    return new int[0];
+                }
+                bitmaps[i++] = pilots;
+            }
+            return FastAggregation.and(bitmaps).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Characters flying at least one of the given starships
+     * @param starshipIds ids of the starships, at least one
+     * @return ids of the characters, ascending and each once
+     */
+    public int[] flyingAny(Collection<Integer> starshipIds) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap[] bitmaps = starshipIds.stream()
+                    .map(pilotsByStarship::get)
+                    .filter(Objects::nonNull)
+                    .toArray(RoaringBitmap[]::new);
+            return FastAggregation.or(bitmaps).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of characters flying each starship
+     * @param starshipIds ids of the starships to count, every starship with at least one pilot when empty
+     * @return pilot count by starship id, ordered by starship id
+     */
+    public Map<Integer, Integer> pilotCounts(Collection<Integer> starshipIds) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            if (starshipIds.isEmpty()) {
+                pilotsByStarship.forEach((starshipId, pilots) -> counts.put(starshipId, pilots.getCardinality()));
+            } else {
+                for (int starshipId : starshipIds) {
+                    RoaringBitmap pilots = pilotsByStarship.get(starshipId);
+                    counts.put(starshipId, pilots == null ? 0 : pilots.getCardinality());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    private void addPilot(int characterId, Collection<Integer> starships) {
+        for (int starshipId : starships) {
+            if (pilotsByStarship.computeIfAbsent(starshipId, id -> new RoaringBitmap()).checkedAdd(characterId)) {
+                starshipsByPilot.computeIfAbsent(characterId, id -> new RoaringBitmap()).add(starshipId);
+                this.moveFingerprint(characterId, starshipId, 1);
+            }
+        }
+    }
+
+    private void removePilot(int characterId) {
+        RoaringBitmap starships = starshipsByPilot.remove(characterId);
+        if (starships != null) {
+            starships.forEach((int starshipId) -> {
+                this.removeId(pilotsByStarship, starshipId, characterId);
+                this.moveFingerprint(characterId, starshipId, -1);
+            });
+        }
+    }
+
+    /** Helper function to remove one id from a bitmap of either map, and the bitmap itself once it is empty, called under the write lock
+     * @param bitmaps pilotsByStarship or starshipsByPilot
+     * @param key id the bitmap belongs to
+     * @param id id to remove from it
+     */
+    private void removeId(Map<Integer, RoaringBitmap> bitmaps, int key, int id) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null && bitmap.checkedRemove(id) && bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+    }
+
+    /** Helper function to move the held fingerprint by one membership the way the same write moved the table, called under the write lock
+     * @param characterId character of the membership
+     * @param starshipId starship of the membership
+     * @param sign 1 for an added membership, -1 for a removed one
+     */
+    private void moveFingerprint(int characterId, int starshipId, int sign) {
+        if (fingerprint != null) {
+            fingerprint = fingerprint.plus(characterId, starshipId, sign);
+        }
+    }
+
+    /** Helper function for the transaction the fingerprint and the scan run in
+     * @return a read-write transaction of its own, so with a replica configured both read the primary, see ReplicaDataSourceConfig.
+     * A lagging replica would hand back a fingerprint that never matches, and a scan missing the writes this instance just applied
+     */
+    private TransactionTemplate primaryTransaction() {
+        return new TransactionTemplate(transactionManager, new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+    }
+
+    /** Helper function to apply a change to the index under the write lock, after the surrounding transaction commits.
+     * While a rebuild runs the change is also logged, to be applied again to the rebuilt index
+     * @param change change to apply, applied right away when there is no transaction
+     */
+    private void afterCommit(Runnable change) {
+        Runnable locked = () -> this.underWriteLock(() -> {
+            change.run();
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    locked.run();
+                }
+            });
+        } else {
+            locked.run();
+        }
+    }
+
+    /** Helper function to run a change of the index's state under the write lock
+     * @param change change to run
+     */
+    private void underWriteLock(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,50 +1,182 @@
 package com.swapi.starwarsapi.service;
 
+import com.swapi.starwarsapi.dto.BatchItemResult;
+import com.swapi.starwarsapi.dto.StarshipFilter;
 import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.exceptions.UniqueViolations;
 import com.swapi.starwarsapi.model.Starship;
 import com.swapi.starwarsapi.repository.StarshipRepository;
+import com.swapi.starwarsapi.repository.StarshipSpecifications;
+import io.micrometer.core.annotation.Counted;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.apache.coyote.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service for Starship
+ * Starships are read on every character write and almost never change, so lookups by id and name go through a
+ * read-through cache. Every write to a Starship drops the cached entries, misses are never cached.
  */
 @Service
+@Profile("!reactive")
+@Timed(value = "swapi.service", description = "Latency of the service methods")
+@Counted(value = "swapi.service.errors", recordFailuresOnly = true, description = "Service methods that threw, by exception type")
 public class StarshipService {
     @Autowired
     private StarshipRepository starshipRepository;
+    @Autowired
+    private BatchSupport batchSupport;
+    @Autowired
+    private NameSearch nameSearch;
+    @Autowired
+    private StarshipPilotIndex starshipPilotIndex;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /** Service for creating a new Starship
      * @param starship Starship we want to persist
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
     public void save(Starship starship) throws BadRequestException, ConflictException {
-        // I want to intercept records with duplicate names.
-        // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validateName(starship.getName());
-
         // The annotation-driven validation only handles simple cases and data types.
         // They don't handle the abstraction over the costInCredits attribute
         this.validateCostInCredits(starship.getCostInCredits());
-        starshipRepository.save(starship);
+
+        // the unique constraint rejects a taken name, see UniqueViolations
+        // My 409 error is more appropriate than the auto-generated 500 error.
+        try {
+            starshipRepository.saveAndFlush(starship);
+        } catch (DataIntegrityViolationException e) {
+            throw this.nameConflict(e, starship.getName());
+        }
+    }
+
+    /** Service for creating many new Starships at once
+     * @param starships Starships we want to persist
+     * @return one BatchItemResult per Starship, in request order. A rejected Starship doesn't stop the others from being created
+     */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
+    @Transactional
+    public List<BatchItemResult> saveAll(List<Starship> starships) {
+        BatchItemResult[] results = new BatchItemResult[starships.size()];
+
+        // annotation-driven validation, costInCredits format and duplicates inside the batch itself
+        Map<String, Integer> indexByName = new LinkedHashMap<>();
+        for (int i = 0; i < starships.size(); i++) {
+            Starship starship = starships.get(i);
+            String violations = starship == null ? "starship cannot be null" : batchSupport.validate(starship);
+            if (violations != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.BAD_REQUEST, violations);
+                continue;
+            }
+            try {
+                this.validateCostInCredits(starship.getCostInCredits());
+            } catch (BadRequestException e) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.BAD_REQUEST, e.getMessage());
+                continue;
+            }
+            if (indexByName.putIfAbsent(starship.getName(), i) != null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.CONFLICT,
+                        "starship with name " + starship.getName() + " appears more than once in the batch");
+            }
+        }
+
+        // then the names that are already taken, with one query per chunk instead of one per starship
+        Set<String> existingNames = batchSupport.findExisting(indexByName.keySet(), starshipRepository::findExistingNames);
+        List<Starship> accepted = new ArrayList<>(indexByName.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(indexByName.size());
+        for (Map.Entry<String, Integer> entry : indexByName.entrySet()) {
+            if (existingNames.contains(entry.getKey())) {
+                results[entry.getValue()] = BatchItemResult.rejected(entry.getValue(), HttpStatus.CONFLICT,
+                        "starship with name " + entry.getKey() + " already exists");
+            } else {
+                accepted.add(starships.get(entry.getValue()));
+                acceptedIndexes.add(entry.getValue());
+            }
+        }
+
+        batchSupport.persistAll(accepted);
+        for (int i = 0; i < accepted.size(); i++) {
+            results[acceptedIndexes.get(i)] = BatchItemResult.created(acceptedIndexes.get(i), accepted.get(i).getId());
+        }
+        return Arrays.asList(results);
     }
 
     /** Service for selecting all persisted Starship entities
      * @return List of Starship entities we want to get
      */
+    @Transactional(readOnly = true)
     public List<Starship> findAll() {
         return starshipRepository.findAll();
     }
 
+    /** Service for selecting one page of persisted Starship entities
+     * @param pageable page number, page size and sort order we want
+     * @return Page of Starship entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<Starship> findAll(Pageable pageable) {
+        return starshipRepository.findAll(pageable);
+    }
+
+    /** Service for selecting the Starship entities that come after a keyset cursor, ordered by id
+     * @param afterId id of the last Starship the client has already seen, 0 to start from the beginning
+     * @param pageable only the page size is used, keyset pages are always ordered by id
+     * @return Slice of Starship entities, without a total count
+     */
+    @Transactional(readOnly = true)
+    public Slice<Starship> findAllAfter(int afterId, Pageable pageable) {
+        return starshipRepository.findByIdGreaterThan(afterId, PageRequest.of(0, pageable.getPageSize(), Sort.by("id")));
+    }
+
+    /** Service for streaming every persisted Starship, ordered by id
+     * @param consumer receives each Starship in turn. The Starship is detached right after, so the persistence context never grows
+     */
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<Starship> consumer) {
+        try (Stream<Starship> starships = starshipRepository.streamAll()) {
+            starships.forEach(starship -> {
+                consumer.accept(starship);
+                entityManager.detach(starship);
+            });
+        }
+    }
+
     /** Service for finding Starship by id
      * @param id id of Starship we want to find
      * @return Starship if exists, null if not
      */
+    // the result is cached past this request, so with a replica configured it is read from the primary, see ReplicaDataSourceConfig
+    @Cacheable(cacheNames = "starshipsById", key = "#id", unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<Starship> findById(Integer id) {
         return starshipRepository.findById(id);
     }
@@ -53,24 +185,80 @@ public class StarshipService {
      * @param name name of Starship we want to find
      * @return Starship if exists, null if not
      */
+    // from the primary like findById
+    @Cacheable(cacheNames = "starshipsByName", key = "#name", unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<Starship> findByName(String name) {
         return starshipRepository.findByName(name);
     }
 
+    /** Service for searching Starships by name: prefix, substring and fuzzy matches, best matches first
+     * @param query text to look for in the names
+     * @param pageable page number and page size we want, the order is always by relevance
+     * @return Page of Starship entities, with the total count
+     */
+    @Transactional(readOnly = true)
+    public Page<Starship> search(String query, Pageable pageable) {
+        Pageable byRelevance = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        Page<Integer> ids = nameSearch.searchIds(query.strip(), byRelevance, starshipRepository::searchIdsByName, nameSearch::starshipNames);
+        return batchSupport.findPage(ids, starshipRepository::findAllById, Starship::getId);
+    }
+
+    /** Service for selecting one page of the Starship entities matching a filter
+     * @param filter model to match and costInCredits range to stay in, the conditions left null are ignored
+     * @param pageable page number, page size and sort order we want. Ties are broken by id, so pages never overlap
+     * @return Page of Starship entities, with the total count
+     * @throws BadRequestException Exception thrown when minCost is greater than maxCost
+     */
+    @Transactional(readOnly = true)
+    public Page<Starship> filter(StarshipFilter filter, Pageable pageable) throws BadRequestException {
+        if (filter.minCost() != null && filter.maxCost() != null && filter.minCost() > filter.maxCost()) {
+            throw new BadRequestException("minCost cannot be greater than maxCost");
+        }
+        Sort sort = pageable.getSort().getOrderFor("id") == null ? pageable.getSort().and(Sort.by("id")) : pageable.getSort();
+        return starshipRepository.findAll(StarshipSpecifications.matching(filter), PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort));
+    }
+
+    /** Service for finding many Starships by id at once
+     * @param ids ids of Starships we want to find
+     * @return List of the Starships that exist, in no particular order
+     */
+    @Transactional(readOnly = true)
+    public List<Starship> findAllById(Collection<Integer> ids) {
+        return batchSupport.findAll(ids, starshipRepository::findAllById);
+    }
+
+    /** Service for checking which of the given Starship ids exist
+     * @param ids ids of Starships we want to check
+     * @return Set of the given ids that belong to persisted Starships
+     */
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(starshipRepository.findExistingIds(ids));
+    }
+
     /** Service for updating Starship by id
      * @param id id of Starship we want to modify
      * @param starship Starship that contains the data we want to modify
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
     public void updateById(Integer id, Starship starship) throws BadRequestException, ConflictException {
-        // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validateStarshipExists(id);
-
         // The annotation-driven validation only handles simple cases and data types.
         // They don't handle the abstraction over the costInCredits attribute
         this.validateCostInCredits(starship.getCostInCredits());
-        starshipRepository.updateById(id, starship.getName(), starship.getModel(), starship.getCostInCredits());
+        int updated;
+        try {
+            updated = starshipRepository.updateById(id, starship.getName(), starship.getModel(), starship.getCostInCredits());
+        } catch (DataIntegrityViolationException e) {
+            // renaming onto a name that is already taken
+            throw this.nameConflict(e, starship.getName());
+        }
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, id);
     }
 
     /** Service for updating Starship by name
@@ -78,71 +266,80 @@ public class StarshipService {
      * @throws BadRequestException Exception thrown for custom validation
      * @throws ConflictException Custom exception and http response that obfuscates some internal server errors on duplicate or missing records
      */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
     public void updateByName(Starship starship) throws BadRequestException, ConflictException {
-        // My 409 error is more appropriate than the auto-generated 500 error.
-        this.validateStarshipExists(starship.getName());
-
         // The annotation-driven validation only handles simple cases and data types.
         // They don't handle the abstraction over the costInCredits attribute
         this.validateCostInCredits(starship.getCostInCredits());
-        starshipRepository.updateByName(starship.getName(), starship.getModel(), starship.getCostInCredits());
+        int updated = starshipRepository.updateByName(starship.getName(), starship.getModel(), starship.getCostInCredits());
+        // My 409 error is more appropriate than silently updating nothing
+        this.validateUpdated(updated, starship.getName());
     }
 
     /** Service for deleting Starship by id
      * @param id id of Starship wa want to delete
      */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
+    @Transactional
     public void deleteById(Integer id) {
         starshipRepository.deleteById(id);
+        starshipPilotIndex.removeStarship(id);
     }
 
     /** Service for deleting Starship by name
      * @param name name of Starship wa want to delete
      */
+    @CacheEvict(cacheNames = {"starshipsById", "starshipsByName", "starshipNames"}, allEntries = true)
+    @Transactional
     public void deleteByName(String name) {
+        // the pilot index is keyed by id, so the id is read before the row goes
+        starshipRepository.findIdByName(name).ifPresent(starshipPilotIndex::removeStarship);
         starshipRepository.deleteByName(name);
     }
 
     // Basic error handling is already taken care of by annotations in the model
     // More advanced error handling is done here
 
-    /** Helper function to weed out duplicates
-     * @param name name of Starship we want to validate
-     * @throws ConflictException Custom exception and http response to catch duplicate records
+    /** Helper function to turn a broken unique constraint on name into my 409
+     * @param e exception thrown by the insert or update
+     * @param name name of Starship we tried to write
+     * @return ConflictException to throw when the name is already taken
+     * @throws DataIntegrityViolationException the original exception, when it broke a different constraint
      */
-    private void validateName(String name) throws ConflictException {
-        // Because I am treating names as unique, I need to make sure multiple records with the same name aren't created
-        if (this.findByName(name).isPresent()) {
-            throw new ConflictException("starship with name " + name + " already exists");
+    private ConflictException nameConflict(DataIntegrityViolationException e, String name) {
+        if (!UniqueViolations.isNameViolation(e)) {
+            throw e;
         }
+        return new ConflictException("starship with name " + name + " already exists");
     }
 
-    /** Helper function to weed out missing Starships
-     * @param name name of Starship we want to validate
+    /** Helper function to weed out missing Starships, using the row count of the update itself
+     * @param updated number of rows the update by name touched
+     * @param name name of Starship we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validateStarshipExists(String name) throws ConflictException {
-        // I need to make sure the starship exists when I try updating it
-        if (this.findByName(name).isEmpty()) {
+    private void validateUpdated(int updated, String name) throws ConflictException {
+        if (updated == 0) {
             throw new ConflictException("starship with name " + name + " does not exist");
         }
     }
 
-    /** Helper function to weed out missing Starships
-     * @param id id of Starship we want to validate
+    /** Helper function to weed out missing Starships, using the row count of the update itself
+     * @param updated number of rows the update by id touched
+     * @param id id of Starship we tried to update
      * @throws ConflictException Custom exception and http response to catch missing records
      */
-    private void validateStarshipExists(int id) throws ConflictException {
-        // I need to make sure the starship exists when I try updating it
-        if (this.findById(id).isEmpty()) {
+    private void validateUpdated(int updated, int id) throws ConflictException {
+        if (updated == 0) {
             throw new ConflictException("starship with id " + id + " does not exist");
         }
     }
 
-    /** Helper function to verify format and value of costInCredits
+    /** Helper function to verify format and value of costInCredits. Package-private so StarshipValidationBenchmark can call it
      * @param costInCredits cost we want to validate
      * @throws BadRequestException Exception thrown for custom validation
      */
-    private void validateCostInCredits(double costInCredits) throws BadRequestException {
+    void validateCostInCredits(double costInCredits) throws BadRequestException {
         // Double class inherently has exactly 0 or 1 decimal points.
         // Postgres money type max value = Long.MAX_VALUE / 100. Verify the input double is less than that
         // I also want to catch and reject the case where a negative cost is given
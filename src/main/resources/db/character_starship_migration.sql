@@ -0,0 +1,26 @@
+-- One-off migration for databases created before starships moved out of star_wars_character.
+-- Only needed when the schema is kept between runs (ddl-auto other than create / create-drop).
+-- Run it once against postgres, before starting the new version of the api.
+
+begin;
+
+create table if not exists character_starship (
+    character_id integer not null references star_wars_character (id) on delete cascade,
+    starship_id  integer not null references starship_master (id) on delete cascade,
+    primary key (character_id, starship_id)
+);
+
+-- the primary key covers lookups by character, this covers lookups by starship
+create index if not exists idx_character_starship_starship_id on character_starship (starship_id);
+
+-- ids of starships that no longer exist are dropped, duplicate ids collapse into a single row
+insert into character_starship (character_id, starship_id)
+select c.id, s.starship_id::integer
+from star_wars_character c
+cross join lateral jsonb_array_elements_text(c.starships) as s(starship_id)
+where exists (select 1 from starship_master m where m.id = s.starship_id::integer)
+on conflict do nothing;
+
+alter table star_wars_character drop column starships;
+
+commit;
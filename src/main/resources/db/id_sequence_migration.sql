@@ -0,0 +1,19 @@
+-- One-off migration for databases created before the ids came from pooled sequences instead of identity columns.
+-- Only needed when the schema is kept between runs (ddl-auto other than create / create-drop).
+-- Run it once against postgres, before starting the new version of the api.
+
+begin;
+
+-- same definition hibernate generates, increment by matches the allocationSize of the entities' @SequenceGenerator
+create sequence if not exists galaxy_planet_seq start with 1 increment by 50;
+create sequence if not exists starship_master_seq start with 1 increment by 50;
+create sequence if not exists star_wars_character_seq start with 1 increment by 50;
+
+-- hibernate's pooled optimizer takes each nextval as the top of a block of 50 and hands out the 49 ids below it first,
+-- so the next value is the existing max id + 50: the first block starts right after the ids already taken.
+-- The identity columns stay, hibernate always inserts the id itself
+select setval('galaxy_planet_seq', coalesce(max(id), 0) + 50, false) from galaxy_planet;
+select setval('starship_master_seq', coalesce(max(id), 0) + 50, false) from starship_master;
+select setval('star_wars_character_seq', coalesce(max(id), 0) + 50, false) from star_wars_character;
+
+commit;
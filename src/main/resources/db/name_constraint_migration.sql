@@ -0,0 +1,34 @@
+-- One-off migration for databases created before the unique constraints on name had fixed names.
+-- Only needed when the schema is kept between runs (ddl-auto other than create / create-drop).
+-- Run it once against postgres, before starting the new version of the api: a taken name is only answered with a 409
+-- when the violated constraint has the name the entities give it, see UniqueViolations
+
+begin;
+
+-- hibernate named them after a hash, so each one is looked up as the single-column unique constraint on name
+do $$
+declare
+    target record;
+    existing text;
+begin
+    for target in select * from (values
+        ('galaxy_planet', 'uk_galaxy_planet_name'),
+        ('starship_master', 'uk_starship_master_name'),
+        ('star_wars_character', 'uk_star_wars_character_name')
+    ) as t (table_name, constraint_name) loop
+        select c.conname into existing
+        from pg_constraint c
+        join pg_attribute a on a.attrelid = c.conrelid and a.attnum = c.conkey[1]
+        where c.conrelid = target.table_name::regclass
+          and c.contype = 'u'
+          and cardinality(c.conkey) = 1
+          and a.attname = 'name';
+        if existing is null then
+            execute format('alter table %I add constraint %I unique (name)', target.table_name, target.constraint_name);
+        elsif existing <> target.constraint_name then
+            execute format('alter table %I rename constraint %I to %I', target.table_name, existing, target.constraint_name);
+        end if;
+    end loop;
+end $$;
+
+commit;
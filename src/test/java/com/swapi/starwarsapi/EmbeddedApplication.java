@@ -0,0 +1,45 @@
+package com.swapi.starwarsapi;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+
+/**
+ * Starts the application against the in-memory database of the embedded profile, for benchmarks and load tests that need the real services
+ */
+public final class EmbeddedApplication {
+
+    private EmbeddedApplication() {
+    }
+
+    /** Starts the application without a web server
+     * @param properties extra properties as key=value, they win over application-embedded.properties
+     * @return the running application context, close it when done
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return run(WebApplicationType.NONE, properties);
+    }
+
+    /** Starts the application with its web server on a random free port, read it back from local.server.port
+     * @param properties extra properties as key=value, they win over application-embedded.properties
+     * @return the running application context, close it when done
+     */
+    public static ConfigurableApplicationContext startServer(String... properties) {
+        String[] withPort = Arrays.copyOf(properties, properties.length + 1);
+        withPort[properties.length] = "server.port=0";
+        return run(WebApplicationType.SERVLET, withPort);
+    }
+
+    private static ConfigurableApplicationContext run(WebApplicationType webApplicationType, String... properties) {
+        // passed as command line arguments, the only property source that outranks the profile's properties file
+        String[] args = Arrays.stream(properties)
+                .map(property -> "--" + property)
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(StarWarsApiApplication.class)
+                .profiles("embedded")
+                .web(webApplicationType)
+                .run(args);
+    }
+}
@@ -0,0 +1,311 @@
+package com.swapi.starwarsapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * End-to-end http load test. Starts the application on the in-memory database of the embedded profile, seeds it through the
+ * batch endpoints, then drives a weighted mix of reads and writes at /planets, /starships and /characters from a pool of threads.
+ * Throughput and p50/p99/p999 latency are reported per endpoint and written as json, so runs can be compared between versions.
+ * Run it with mvn -Ploadtest -DskipTests test, settings are passed as -Dloadtest.args="threads=32 duration=60".
+ * virtualThreads=true also activates the virtual-threads profile, which serves the requests on virtual threads instead of Tomcat's thread pool
+ */
+public class LoadTestRunner {
+    private static final int PLANETS = 100;
+    private static final int STARSHIPS = 100;
+    private static final int CHARACTERS = 5000;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String baseUrl;
+    // every write gets a fresh name, so the mix never runs into name conflicts
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final List<Operation> operations = new ArrayList<>();
+    private int totalWeight;
+
+    /**
+     * One kind of request in the mix
+     * @param endpoint name the results are reported under
+     * @param weight relative share of the traffic
+     * @param request builds a new request each time, with its own random ids
+     */
+    private record Operation(String endpoint, int weight, Supplier<HttpRequest> request) {
+    }
+
+    /**
+     * Results of one endpoint over the measured period
+     * @param endpoint name of the endpoint
+     * @param requests number of requests sent
+     * @param errors number of requests that failed or got a 4xx/5xx
+     * @param throughput requests per second
+     * @param p50Ms median latency in milliseconds
+     * @param p99Ms 99th percentile latency in milliseconds
+     * @param p999Ms 99.9th percentile latency in milliseconds
+     * @param maxMs slowest request in milliseconds
+     */
+    public record EndpointResult(String endpoint, int requests, int errors, double throughput,
+                                 double p50Ms, double p99Ms, double p999Ms, double maxMs) {
+    }
+
+    /**
+     * Latencies recorded by one thread for one endpoint, in nanoseconds
+     */
+    private static class Samples {
+        private long[] latencies = new long[1024];
+        private int size;
+        private int errors;
+
+        void add(long latency, boolean error) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+            if (error) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                this.add(other.latencies[i], false);
+            }
+            errors += other.errors;
+        }
+    }
+
+    public LoadTestRunner(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.add("GET /planets/{id}", 15, () -> get("/planets/" + randomId(PLANETS)));
+        this.add("GET /starships/{id}", 15, () -> get("/starships/" + randomId(STARSHIPS)));
+        this.add("GET /characters/{id}", 20, () -> get("/characters/" + randomId(CHARACTERS)));
+        this.add("GET /characters?page=&size=20", 8, () -> get("/characters?page=" + (randomId(CHARACTERS / 20) - 1) + "&size=20"));
+        this.add("GET /characters/{id}?expand=", 8, () -> get("/characters/" + randomId(CHARACTERS) + "?expand=homePlanet,starships"));
+        this.add("GET /starships/{id}/pilots", 5, () -> get("/starships/" + randomId(STARSHIPS) + "/pilots?size=20"));
+        this.add("GET /planets/{id}/residents", 5, () -> get("/planets/" + randomId(PLANETS) + "/residents?size=20"));
+        this.add("POST /planets", 4, () -> send("POST", "/planets", planet("load planet " + sequence.incrementAndGet())));
+        this.add("POST /starships", 4, () -> send("POST", "/starships", starship("load starship " + sequence.incrementAndGet())));
+        this.add("POST /characters", 8, () -> send("POST", "/characters", character("load character " + sequence.incrementAndGet())));
+        this.add("PUT /characters/{id}", 8, () -> send("PUT", "/characters/" + randomId(CHARACTERS), character("renamed character " + sequence.incrementAndGet())));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            String[] setting = arg.split("=", 2);
+            settings.put(setting[0], setting.length == 2 ? setting[1] : "");
+        }
+        int threads = Integer.parseInt(settings.getOrDefault("threads", "16"));
+        int warmup = Integer.parseInt(settings.getOrDefault("warmup", "10"));
+        int duration = Integer.parseInt(settings.getOrDefault("duration", "30"));
+        File output = new File(settings.getOrDefault("output", "target/load-test-result.json"));
+        boolean virtualThreads = Boolean.parseBoolean(settings.getOrDefault("virtualThreads", "false"));
+
+        // the profile itself rather than the property it sets, so the run uses exactly what a deployment with the profile runs
+        String[] properties = virtualThreads ? new String[]{"spring.profiles.active=virtual-threads"} : new String[0];
+        try (ConfigurableApplicationContext context = EmbeddedApplication.startServer(properties)) {
+            LoadTestRunner runner = new LoadTestRunner("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            runner.seed();
+            List<EndpointResult> results = runner.run(threads, Duration.ofSeconds(warmup), Duration.ofSeconds(duration));
+            print(results);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("threads", threads);
+            report.put("virtualThreads", virtualThreads);
+            report.put("warmupSeconds", warmup);
+            report.put("durationSeconds", duration);
+            report.put("planets", PLANETS);
+            report.put("starships", STARSHIPS);
+            report.put("characters", CHARACTERS);
+            report.put("javaVersion", System.getProperty("java.version"));
+            report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            report.put("endpoints", results);
+            output.getAbsoluteFile().getParentFile().mkdirs();
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output, report);
+            System.out.println("Load test result is saved to " + output.getAbsolutePath());
+        }
+    }
+
+    /** Fills the database through the batch endpoints, every character flies two starships */
+    private void seed() throws IOException, InterruptedException {
+        List<String> planets = new ArrayList<>(PLANETS);
+        for (int i = 1; i <= PLANETS; i++) {
+            planets.add(planet("planet " + i));
+        }
+        List<String> starships = new ArrayList<>(STARSHIPS);
+        for (int i = 1; i <= STARSHIPS; i++) {
+            starships.add(starship("starship " + i));
+        }
+        List<String> characters = new ArrayList<>(CHARACTERS);
+        for (int i = 1; i <= CHARACTERS; i++) {
+            characters.add(character("character " + i));
+        }
+        this.expectOk(send("POST", "/planets/batch", "[" + String.join(",", planets) + "]"));
+        this.expectOk(send("POST", "/starships/batch", "[" + String.join(",", starships) + "]"));
+        this.expectOk(send("POST", "/characters/batch", "[" + String.join(",", characters) + "]"));
+    }
+
+    /** Runs the mix from every thread, first unrecorded for the warmup, then recorded for the duration
+     * @param threads number of threads sending requests, each waits for its response before sending the next
+     * @param warmup time to let the jit and the caches settle before recording
+     * @param duration time to record for
+     * @return results per endpoint, in the order of the mix, followed by all endpoints together
+     */
+    private List<EndpointResult> run(int threads, Duration warmup, Duration duration) throws Exception {
+        long recordFrom = System.nanoTime() + warmup.toNanos();
+        long end = recordFrom + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<String, Samples>>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> this.drive(recordFrom, end)));
+        }
+        Map<String, Samples> merged = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            merged.put(operation.endpoint(), new Samples());
+        }
+        for (Future<Map<String, Samples>> future : futures) {
+            future.get().forEach((endpoint, samples) -> merged.get(endpoint).addAll(samples));
+        }
+        executor.shutdown();
+
+        List<EndpointResult> results = new ArrayList<>();
+        Samples all = new Samples();
+        for (Map.Entry<String, Samples> entry : merged.entrySet()) {
+            results.add(summarize(entry.getKey(), entry.getValue(), duration));
+            all.addAll(entry.getValue());
+        }
+        results.add(summarize("all", all, duration));
+        return results;
+    }
+
+    private Map<String, Samples> drive(long recordFrom, long end) {
+        Map<String, Samples> samples = new HashMap<>();
+        long now = System.nanoTime();
+        while (now < end) {
+            Operation operation = this.pick();
+            boolean error;
+            try {
+                HttpResponse<Void> response = client.send(operation.request().get(), HttpResponse.BodyHandlers.discarding());
+                error = response.statusCode() >= 400;
+            } catch (IOException | InterruptedException e) {
+                error = true;
+            }
+            long finished = System.nanoTime();
+            if (now >= recordFrom) {
+                samples.computeIfAbsent(operation.endpoint(), endpoint -> new Samples()).add(finished - now, error);
+            }
+            now = finished;
+        }
+        return samples;
+    }
+
+    private static EndpointResult summarize(String endpoint, Samples samples, Duration duration) {
+        long[] latencies = Arrays.copyOf(samples.latencies, samples.size);
+        Arrays.sort(latencies);
+        return new EndpointResult(
+                endpoint,
+                samples.size,
+                samples.errors,
+                round(samples.size / (double) duration.toSeconds()),
+                percentile(latencies, 0.50),
+                percentile(latencies, 0.99),
+                percentile(latencies, 0.999),
+                latencies.length == 0 ? 0 : toMillis(latencies[latencies.length - 1])
+        );
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return toMillis(sorted[Math.max(index, 0)]);
+    }
+
+    private static double toMillis(long nanos) {
+        return round(nanos / 1_000_000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static void print(List<EndpointResult> results) {
+        System.out.printf("%-32s %10s %8s %10s %10s %10s %10s %10s%n", "Endpoint", "Requests", "Errors", "Req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (EndpointResult result : results) {
+            System.out.printf("%-32s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n", result.endpoint(), result.requests(), result.errors(),
+                    result.throughput(), result.p50Ms(), result.p99Ms(), result.p999Ms(), result.maxMs());
+        }
+    }
+
+    private void add(String endpoint, int weight, Supplier<HttpRequest> request) {
+        operations.add(new Operation(endpoint, weight, request));
+        totalWeight += weight;
+    }
+
+    private Operation pick() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Operation operation : operations) {
+            roll -= operation.weight();
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException("weights changed while picking");
+    }
+
+    private void expectOk(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static int randomId(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound) + 1;
+    }
+
+    private static String planet(String name) {
+        return "{\"name\":\"" + name + "\",\"climate\":\"temperate\",\"population\":1000}";
+    }
+
+    private static String starship(String name) {
+        return "{\"name\":\"" + name + "\",\"model\":\"model\",\"costInCredits\":1000.54}";
+    }
+
+    private static String character(String name) {
+        int first = randomId(STARSHIPS);
+        int second = randomId(STARSHIPS);
+        return "{\"name\":\"" + name + "\",\"homePlanetId\":" + randomId(PLANETS) + ",\"starships\":[" + first + "," + second + "]}";
+    }
+}
@@ -0,0 +1,43 @@
+package com.swapi.starwarsapi.config;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.repository.PlanetRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The Hibernate hooks DatabaseStatsConfig installs: the statements of the current thread reach its request stats,
+ * and statements run before the stats started aren't counted
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("embedded")
+class DatabaseStatsTest {
+
+    @Autowired
+    private PlanetRepository planetRepository;
+
+    @AfterEach
+    void finish() {
+        RequestDatabaseStats.finish();
+    }
+
+    @Test
+    void countsTheStatementsOfTheCurrentRequest() {
+        planetRepository.saveAll(List.of(new Planet("stats planet 1", "arid", 10), new Planet("stats planet 2", "frozen", 20)));
+
+        RequestDatabaseStats stats = RequestDatabaseStats.start(Duration.ofMinutes(1));
+        List<Planet> planets = planetRepository.findAll();
+        planetRepository.count();
+
+        assertTrue(planets.size() >= 2);
+        assertEquals(2, stats.getStatements());
+    }
+}
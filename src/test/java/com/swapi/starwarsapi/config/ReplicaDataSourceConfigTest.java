@@ -0,0 +1,121 @@
+package com.swapi.starwarsapi.config;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.service.NameNgramIndex;
+import com.swapi.starwarsapi.service.PlanetService;
+import com.swapi.starwarsapi.service.StarWarsCharacterService;
+import com.swapi.starwarsapi.service.StarshipService;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The read-through caches with a replica configured, on the embedded profile.
+ * The replica is a schema of the same in-memory database holding a copy of the tables taken before the last writes,
+ * so it lags behind the primary the way a real one does. Read-only transactions read that copy,
+ * but the cached lookups they call must fill their cache entries from the primary
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica_cache;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        // every replica connection reads the replica schema, the INIT commands are separated by an escaped semicolon
+        "app.datasource.replica.url=jdbc:h2:mem:replica_cache;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;" +
+                "INIT=create schema if not exists replica\\\\;set schema replica",
+        "app.pilot-index.refresh-interval=PT1H"
+})
+@ActiveProfiles("embedded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReplicaDataSourceConfigTest {
+    private static final List<String> TABLES = List.of("galaxy_planet", "starship_master", "star_wars_character", "character_starship");
+
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarshipService starshipService;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private int planetId;
+    private int starshipId;
+    private int newcomerId;
+
+    @BeforeAll
+    void seed() throws Exception {
+        Planet planet = new Planet("replica planet", "arid", 1000);
+        planetService.save(planet);
+        planetId = planet.getId();
+        Starship starship = new Starship("replica starship", "light freighter", 100000);
+        starshipService.save(starship);
+        starshipId = starship.getId();
+        starWarsCharacterService.save(new StarWarsCharacter("replica pilot", planetId, List.of(starshipId)));
+
+        // the replica's copy, then writes it never receives
+        jdbcTemplate.execute("create schema if not exists replica");
+        for (String table : TABLES) {
+            jdbcTemplate.execute("create table replica." + table + " as select * from " + table);
+        }
+        planetService.updateById(planetId, new Planet("replica planet renamed", "arid", 1000));
+        starshipService.updateById(starshipId, new Starship("replica starship renamed", "light freighter", 100000));
+        StarWarsCharacter newcomer = new StarWarsCharacter("replica newcomer", planetId, List.of());
+        starWarsCharacterService.save(newcomer);
+        newcomerId = newcomer.getId();
+    }
+
+    @BeforeEach
+    void clearCaches() {
+        // the second-level cache too, the seeding left the renamed rows in it and a read-only transaction would be served from there
+        entityManagerFactory.getCache().evictAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void readOnlyTransactionsReadTheReplica() {
+        // the newcomer only exists on the primary
+        List<String> names = starWarsCharacterService.findAll().stream().map(StarWarsCharacter::getName).toList();
+        assertTrue(names.contains("replica pilot"));
+        assertFalse(names.contains("replica newcomer"));
+    }
+
+    @Test
+    void planetLookupOfAReadOnlyTransactionIsCachedFromThePrimary() throws Exception {
+        starWarsCharacterService.findByHomePlanetId(planetId, PageRequest.of(0, 20));
+
+        assertEquals("replica planet renamed", cacheManager.getCache("planetsById").get(planetId, Planet.class).getName());
+    }
+
+    @Test
+    void starshipLookupOfAReadOnlyTransactionIsCachedFromThePrimary() throws Exception {
+        starWarsCharacterService.findByStarshipId(starshipId, PageRequest.of(0, 20));
+
+        assertEquals("replica starship renamed", cacheManager.getCache("starshipsById").get(starshipId, Starship.class).getName());
+    }
+
+    @Test
+    void nameIndexOfAReadOnlySearchIsCachedFromThePrimary() {
+        starWarsCharacterService.search("replica", PageRequest.of(0, 20));
+
+        NameNgramIndex index = cacheManager.getCache("characterNames").get(SimpleKey.EMPTY, NameNgramIndex.class);
+        assertTrue(Arrays.stream(index.search("newcomer")).anyMatch(id -> id == newcomerId));
+    }
+}
@@ -0,0 +1,58 @@
+package com.swapi.starwarsapi.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SortedIntList as a set of ids: sorted and deduplicated on the way in, and equal to any List holding the same ids in the same order
+ */
+class SortedIntListTest {
+
+    @Test
+    void copyOfSortsAndDeduplicates() {
+        SortedIntList starships = SortedIntList.copyOf(Arrays.asList(9, 2, 7, 2, 9, 1));
+
+        assertEquals(List.of(1, 2, 7, 9), starships);
+        assertArrayEquals(new int[]{1, 2, 7, 9}, starships.toIntArray());
+        assertEquals(4, starships.size());
+    }
+
+    @Test
+    void copyOfKeepsNullAsZero() {
+        assertEquals(List.of(0, 3), SortedIntList.copyOf(Arrays.asList(3, null)));
+    }
+
+    @Test
+    void copyOfAnEmptyCollectionIsEmpty() {
+        assertSame(SortedIntList.empty(), SortedIntList.copyOf(List.of()));
+    }
+
+    @Test
+    void equalsAnArrayListWithTheSameIds() {
+        SortedIntList starships = SortedIntList.copyOf(List.of(3, 1, 2));
+        List<Integer> list = new ArrayList<>(List.of(1, 2, 3));
+
+        assertEquals(list, starships);
+        assertEquals(starships, list);
+        assertEquals(list.hashCode(), starships.hashCode());
+        assertNotEquals(new ArrayList<>(List.of(3, 2, 1)), starships);
+        assertNotEquals(SortedIntList.copyOf(List.of(1, 2)), starships);
+    }
+
+    @Test
+    void looksIdsUp() {
+        SortedIntList starships = SortedIntList.copyOf(List.of(10, 30, 20));
+
+        assertTrue(starships.containsInt(20));
+        assertFalse(starships.containsInt(25));
+        assertEquals(2, starships.indexOf(30));
+        assertEquals(-1, starships.indexOf("30"));
+        assertEquals(10, starships.getInt(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> starships.getInt(3));
+    }
+}
@@ -0,0 +1,57 @@
+package com.swapi.starwarsapi.converter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StarshipListConverter against a general purpose json mapper reading the same starship ids,
+ * run with -prof gc to compare the allocation per character. Only reads are measured, the starships of a character are never written through the converter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarshipListConverterBenchmark {
+    private static final TypeReference<List<Integer>> INTEGER_LIST = new TypeReference<>() {};
+
+    @Param({"3", "30", "300"})
+    private int starshipCount;
+
+    private StarshipListConverter converter;
+    private ObjectMapper objectMapper;
+    private List<Integer> starships;
+    private String column;
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        converter = new StarshipListConverter();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        starships = new ArrayList<>(starshipCount);
+        for (int i = 1; i <= starshipCount; i++) {
+            starships.add(i * 37);
+        }
+        // the text postgres sends for the array_agg of the formula
+        column = starships.toString().replace('[', '{').replace(']', '}').replace(" ", "");
+        json = objectMapper.writeValueAsString(starships);
+    }
+
+    @Benchmark
+    public List<Integer> converterRead() {
+        return converter.convertToEntityAttribute(column);
+    }
+
+    @Benchmark
+    public List<Integer> jacksonRead() throws IOException {
+        return objectMapper.readValue(json, INTEGER_LIST);
+    }
+}
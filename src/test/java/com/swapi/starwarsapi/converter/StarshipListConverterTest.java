@@ -0,0 +1,43 @@
+package com.swapi.starwarsapi.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The column text StarshipListConverter reads: postgres' array text, h2's, and the null array_agg gives a character without starships
+ */
+class StarshipListConverterTest {
+    private final StarshipListConverter converter = new StarshipListConverter();
+
+    @Test
+    void readsNullAsEmpty() {
+        assertSame(SortedIntList.empty(), converter.convertToEntityAttribute(null));
+    }
+
+    @Test
+    void readsPostgresArrays() {
+        assertEquals(List.of(), converter.convertToEntityAttribute("{}"));
+        assertEquals(List.of(5), converter.convertToEntityAttribute("{5}"));
+        assertEquals(List.of(1, 2, 3), converter.convertToEntityAttribute("{1,2,3}"));
+    }
+
+    @Test
+    void readsH2ArraysSortedAndDeduplicated() {
+        assertEquals(List.of(1, 3), converter.convertToEntityAttribute("[3, 1, 1]"));
+    }
+
+    @Test
+    void readsMultiDigitIds() {
+        assertEquals(List.of(7, 42, 1234567), converter.convertToEntityAttribute("{7,42,1234567}"));
+    }
+
+    @Test
+    void writesPostgresArrayText() {
+        assertEquals("{1,2,3}", converter.convertToDatabaseColumn(SortedIntList.copyOf(List.of(3, 2, 1))));
+        assertEquals("{}", converter.convertToDatabaseColumn(SortedIntList.empty()));
+        assertNull(converter.convertToDatabaseColumn(null));
+    }
+}
@@ -0,0 +1,54 @@
+package com.swapi.starwarsapi.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round-trips of StarWarsCharacter lists, the body of GET /characters and POST /characters/batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharacterSerializationBenchmark {
+    private static final TypeReference<List<StarWarsCharacter>> CHARACTER_LIST = new TypeReference<>() {};
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<StarWarsCharacter> characters;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        // the same defaults spring boot gives the mapper behind the controllers
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        characters = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            StarWarsCharacter character = new StarWarsCharacter("character " + i, i % 50 + 1, List.of(i % 7 + 1, i % 11 + 8, i % 13 + 19));
+            character.setId(i);
+            characters.add(character);
+        }
+        json = objectMapper.writeValueAsBytes(characters);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(characters);
+    }
+
+    @Benchmark
+    public List<StarWarsCharacter> deserialize() throws IOException {
+        return objectMapper.readValue(json, CHARACTER_LIST);
+    }
+}
@@ -0,0 +1,67 @@
+package com.swapi.starwarsapi.model;
+
+import com.swapi.starwarsapi.converter.SortedIntList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap taken by the starship ids of loaded characters, as a list of boxed Integers and as a SortedIntList.
+ * Everything a benchmark allocates is kept by the lists it returns, so with -prof gc the gc.alloc.rate.norm
+ * divided by characterCount is the footprint of one character's starships
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarshipFootprintBenchmark {
+
+    @Param({"1000"})
+    private int characterCount;
+
+    @Param({"3", "30"})
+    private int starshipCount;
+
+    private int[][] ids;
+
+    @Setup
+    public void setUp() {
+        ids = new int[characterCount][starshipCount];
+        for (int i = 0; i < characterCount; i++) {
+            for (int j = 0; j < starshipCount; j++) {
+                // past Integer's cache of -128 to 127, like the ids of any table with more than a few rows
+                ids[i][j] = 1000 + i + j * 37;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Integer>[] boxed() {
+        // what the jdbc array mapping used to leave on every character
+        @SuppressWarnings("unchecked")
+        List<Integer>[] starships = new List[characterCount];
+        for (int i = 0; i < characterCount; i++) {
+            List<Integer> boxed = new ArrayList<>(starshipCount);
+            for (int id : ids[i]) {
+                boxed.add(Integer.valueOf(id));
+            }
+            starships[i] = boxed;
+        }
+        return starships;
+    }
+
+    @Benchmark
+    public List<Integer>[] primitive() {
+        // the converter allocates the int[] once and wraps it, the same as this
+        @SuppressWarnings("unchecked")
+        List<Integer>[] starships = new List[characterCount];
+        for (int i = 0; i < characterCount; i++) {
+            starships[i] = SortedIntList.of(ids[i].clone());
+        }
+        return starships;
+    }
+}
@@ -0,0 +1,95 @@
+package com.swapi.starwarsapi.reactive;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The reads of the reactive profile, served by netty over r2dbc against an in-memory h2 database.
+ * The profile never creates the schema, so the tables the reactive repositories read are created here with a few rows.
+ * Only built with the reactive maven profile: mvn -Preactive test
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive_endpoints;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password="
+})
+@ActiveProfiles("reactive")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReactiveEndpointsTest {
+    private static final List<String> SCHEMA = List.of(
+            "create table galaxy_planet (id integer primary key, name varchar(255) not null unique, climate varchar(255), population integer)",
+            "create table starship_master (id integer primary key, name varchar(255) not null unique, model varchar(255), cost_in_credits float(53))",
+            "create table star_wars_character (id integer primary key, name varchar(255) not null unique, home_planet integer not null)",
+            "create table character_starship (character_id integer not null, starship_id integer not null, primary key (character_id, starship_id))",
+            "insert into galaxy_planet values (1, 'tatooine', 'arid', 200000), (2, 'hoth', 'frozen', 0)",
+            "insert into starship_master values (1, 'x-wing', 'T-65', 149999), (2, 'millennium falcon', 'YT-1300', 100000)",
+            "insert into star_wars_character values (1, 'luke skywalker', 1), (2, 'owen lars', 1)",
+            "insert into character_starship values (1, 2), (1, 1)"
+    );
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeAll
+    void createSchema() {
+        for (String sql : SCHEMA) {
+            databaseClient.sql(sql).then().block();
+        }
+    }
+
+    @Test
+    void listsATable() {
+        List<Planet> planets = webTestClient.get().uri("/planets").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Planet.class).returnResult().getResponseBody();
+
+        assertEquals(List.of("tatooine", "hoth"), planets.stream().map(Planet::getName).toList());
+    }
+
+    @Test
+    void streamsATableOneObjectPerLine() {
+        List<Starship> starships = webTestClient.get().uri("/starships").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Starship.class).getResponseBody().collectList().block();
+
+        assertEquals(List.of("x-wing", "millennium falcon"), starships.stream().map(Starship::getName).toList());
+    }
+
+    @Test
+    void readsACharacterWithItsStarships() {
+        StarWarsCharacter luke = webTestClient.get().uri("/characters/1").exchange()
+                .expectStatus().isOk()
+                .expectBody(StarWarsCharacter.class).returnResult().getResponseBody();
+        StarWarsCharacter owen = webTestClient.get().uri("/characters/find?name={name}", "owen lars").exchange()
+                .expectStatus().isOk()
+                .expectBody(StarWarsCharacter.class).returnResult().getResponseBody();
+
+        assertEquals("luke skywalker", luke.getName());
+        assertEquals(List.of(1, 2), luke.getStarships());
+        assertEquals(List.of(), owen.getStarships());
+    }
+
+    @Test
+    void answersAMissingRowWithAnEmptyBody() {
+        webTestClient.get().uri("/planets/999").exchange()
+                .expectStatus().isOk()
+                .expectBody().isEmpty();
+    }
+}
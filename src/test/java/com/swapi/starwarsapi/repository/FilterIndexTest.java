@@ -0,0 +1,156 @@
+package com.swapi.starwarsapi.repository;
+
+import com.swapi.starwarsapi.dto.PlanetFilter;
+import com.swapi.starwarsapi.dto.StarshipFilter;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.service.PlanetService;
+import com.swapi.starwarsapi.service.StarshipService;
+import org.apache.coyote.BadRequestException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The /planets/filter and /starships/filter queries against the in-memory database of the embedded profile:
+ * the rows they return, and the index H2 picks for the sql Hibernate generates from the specifications, read back with EXPLAIN
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("embedded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FilterIndexTest {
+    private static final String[] CLIMATES = {"arid", "temperate", "frozen", "murky", "tropical"};
+    private static final String[] MODELS = {"YT-1300", "T-65", "Lambda", "Imperial I", "CR90"};
+    private static final int ROWS = 2000;
+
+    // sql of every statement Hibernate prepares, in order
+    private static final List<String> statements = new ArrayList<>();
+
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarshipService starshipService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class StatementCapture {
+        // runs after DatabaseStatsConfig's customizer, so its statement inspector is kept and only wrapped
+        @Bean
+        @Order(Ordered.LOWEST_PRECEDENCE)
+        HibernatePropertiesCustomizer statementCaptureCustomizer() {
+            return properties -> {
+                StatementInspector inspector = (StatementInspector) properties.get(AvailableSettings.STATEMENT_INSPECTOR);
+                properties.put(AvailableSettings.STATEMENT_INSPECTOR, (StatementInspector) sql -> {
+                    synchronized (statements) {
+                        statements.add(sql);
+                    }
+                    return inspector == null ? sql : inspector.inspect(sql);
+                });
+            };
+        }
+    }
+
+    @BeforeAll
+    void seed() {
+        List<Planet> planets = new ArrayList<>(ROWS);
+        List<Starship> starships = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            planets.add(new Planet("planet " + i, CLIMATES[i % CLIMATES.length], i * 1000));
+            starships.add(new Starship("starship " + i, MODELS[i % MODELS.length], i * 10.5));
+        }
+        planetService.saveAll(planets);
+        starshipService.saveAll(starships);
+        // H2 picks indexes by cost, which needs row counts
+        jdbcTemplate.execute("analyze");
+    }
+
+    @Test
+    void planetsByClimateAndPopulation() throws BadRequestException {
+        Page<Planet> page = planetService.filter(new PlanetFilter("arid", 100_000, 500_000), PageRequest.of(0, 1000, Sort.by("population")));
+
+        // every fifth planet is arid, populations go up by 1000
+        assertEquals(81, page.getTotalElements());
+        assertTrue(page.getContent().stream().allMatch(planet ->
+                planet.getClimate().equals("arid") && planet.getPopulation() >= 100_000 && planet.getPopulation() <= 500_000));
+        assertSorted(page.getContent().stream().mapToDouble(Planet::getPopulation).toArray());
+        assertUsesIndex("galaxy_planet", "idx_galaxy_planet_climate_population");
+    }
+
+    @Test
+    void planetsByPopulation() throws BadRequestException {
+        Page<Planet> page = planetService.filter(new PlanetFilter(null, 1_000_000, 1_049_000), PageRequest.of(1, 20, Sort.by("population")));
+
+        assertEquals(50, page.getTotalElements());
+        assertEquals(1_020_000, page.getContent().get(0).getPopulation());
+        assertUsesIndex("galaxy_planet", "idx_galaxy_planet_population");
+    }
+
+    @Test
+    void starshipsByModelAndCost() throws BadRequestException {
+        Page<Starship> page = starshipService.filter(new StarshipFilter("T-65", null, 1000.0), PageRequest.of(0, 1000, Sort.by("costInCredits")));
+
+        // T-65 is every fifth starship from the second one, costs go up by 10.5
+        assertEquals(19, page.getTotalElements());
+        assertTrue(page.getContent().stream().allMatch(starship -> starship.getModel().equals("T-65") && starship.getCostInCredits() <= 1000));
+        assertSorted(page.getContent().stream().mapToDouble(Starship::getCostInCredits).toArray());
+        assertUsesIndex("starship_master", "idx_starship_master_model_cost");
+    }
+
+    @Test
+    void starshipsUnderCostSortedByCost() throws BadRequestException {
+        Page<Starship> page = starshipService.filter(new StarshipFilter(null, null, 500.0), PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "costInCredits")));
+
+        assertEquals(48, page.getTotalElements());
+        assertEquals(493.5, page.getContent().get(0).getCostInCredits());
+        assertUsesIndex("starship_master", "idx_starship_master_cost");
+    }
+
+    @Test
+    void rejectsInvertedRanges() {
+        assertThrows(BadRequestException.class, () -> planetService.filter(new PlanetFilter(null, 10, 5), PageRequest.of(0, 20)));
+        assertThrows(BadRequestException.class, () -> starshipService.filter(new StarshipFilter(null, 10.0, 5.0), PageRequest.of(0, 20)));
+    }
+
+    /** Helper function to EXPLAIN the last select Hibernate ran on a table, other than its count query
+     * @param table table the select reads
+     * @param index index its plan has to use
+     */
+    private void assertUsesIndex(String table, String index) {
+        String sql;
+        synchronized (statements) {
+            sql = statements.reversed().stream()
+                    .filter(statement -> statement.startsWith("select") && statement.contains(table) && !statement.contains("count("))
+                    .findFirst()
+                    .orElseThrow();
+        }
+        String plan = jdbcTemplate.queryForObject("explain " + sql, String.class).toLowerCase(Locale.ROOT);
+        assertTrue(plan.contains(index), () -> "expected " + index + " in the plan of " + sql + "\n" + plan);
+    }
+
+    private static void assertSorted(double[] values) {
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(values[i - 1] <= values[i]);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Character writes on the embedded profile with a pool of two connections and no replica.
+ * Every write looks its home planet up through the planetsById cache, and a miss must join the write's transaction:
+ * a lookup asking the pool for a second connection while the write holds one would starve the pool under concurrent writes
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=jdbc:h2:mem:small_pool;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.connection-timeout=1000",
+        "app.pilot-index.refresh-interval=PT1H"
+})
+@ActiveProfiles("embedded")
+class ConnectionPoolTest {
+    private static final int WRITERS = 16;
+
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Test
+    void concurrentCharacterWritesFitInTheirOwnConnection() throws Exception {
+        List<Integer> planetIds = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            Planet planet = new Planet("small pool planet " + i, "arid", 1000);
+            planetService.save(planet);
+            planetIds.add(planet.getId());
+        }
+        // every write misses the cache
+        cacheManager.getCache("planetsById").clear();
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                StarWarsCharacter character = new StarWarsCharacter("small pool character " + i, planetIds.get(i), List.of());
+                writes.add(executor.submit(() -> {
+                    start.await();
+                    starWarsCharacterService.save(character);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> write : writes) {
+                // a starved pool fails the write after the connection-timeout
+                write.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(WRITERS, starWarsCharacterService.findAll().stream().filter(character -> character.getName().startsWith("small pool")).count());
+    }
+}
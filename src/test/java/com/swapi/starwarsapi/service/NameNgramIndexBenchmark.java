@@ -0,0 +1,75 @@
+package com.swapi.starwarsapi.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /{planets|starships|characters}/search as answered by the in-memory NameNgramIndex, which NameSearch uses when the database has no pg_trgm.
+ * It says nothing about searches served by pg_trgm on postgres.
+ * Names are two made up words of 2 to 4 syllables, so any short query matches a large share of the rows, like real names do.
+ * build is the first search after a write, which rebuilds the index, the others are a search on an index that is already built
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NameNgramIndexBenchmark {
+    private static final String[] SYLLABLES = {
+            "sky", "wal", "ker", "lu", "ke", "dar", "th", "va", "der", "o", "bi", "wan", "ken", "no", "bi",
+            "le", "ia", "or", "ga", "na", "han", "so", "lo", "che", "wie", "yo", "da", "pa", "dme", "mau", "ra"
+    };
+
+    @Param({"100000", "1000000"})
+    private int rowCount;
+
+    private String[] names;
+    private NameNgramIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        names = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            names[i] = word(random) + " " + word(random) + " " + i;
+        }
+        index = this.build();
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+
+    @Benchmark
+    public NameNgramIndex build() {
+        NameNgramIndex built = new NameNgramIndex();
+        for (int i = 0; i < names.length; i++) {
+            built.add(i + 1, names[i]);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int[] prefix() {
+        return index.search("Skywalker");
+    }
+
+    @Benchmark
+    public int[] substring() {
+        return index.search("walkerdar");
+    }
+
+    @Benchmark
+    public int[] fuzzy() {
+        return index.search("skywalkre");
+    }
+}
@@ -0,0 +1,110 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Name search on the embedded profile, where H2 has no pg_trgm and NameSearch answers from its NameNgramIndex fallback:
+ * the ranking, queries with nothing to match, and the cached index following inserts, renames and deletes.
+ * The names share a made-up word, so rows written by other tests never match
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("embedded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class NameSearchTest {
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private int homePlanetId;
+
+    @BeforeAll
+    void seed() throws Exception {
+        // saved out of rank order, so the order searches return comes from the ranking
+        for (String name : List.of("Old Korriban", "Korriben", "Korriban Minor", "Dantooine", "Korriban")) {
+            planetService.save(new Planet(name, "arid", 1000));
+        }
+        homePlanetId = planetService.findByName("Dantooine").orElseThrow().getId();
+    }
+
+    @Test
+    void ranksPrefixThenSubstringThenSimilar() {
+        // prefix matches by similarity, the substring match, then the typo
+        assertEquals(List.of("Korriban", "Korriban Minor", "Old Korriban", "Korriben"), this.searchPlanets("korriban"));
+        assertEquals(List.of("Korriban", "Korriban Minor", "Old Korriban", "Korriben"), this.searchPlanets("  KORRIBAN "));
+        // a prefix of the typo too, which ties with Korriban on similarity and comes second by name
+        assertEquals(List.of("Korriban", "Korriben", "Korriban Minor", "Old Korriban"), this.searchPlanets("korrib"));
+    }
+
+    @Test
+    void pagesInRankOrder() {
+        Page<Planet> second = planetService.search("korriban", PageRequest.of(1, 2));
+
+        assertEquals(4, second.getTotalElements());
+        assertEquals(List.of("Old Korriban", "Korriben"), second.getContent().stream().map(Planet::getName).toList());
+    }
+
+    @Test
+    void findsNothingForPunctuation() {
+        assertEquals(List.of(), this.searchPlanets("!!!"));
+        assertEquals(List.of(), this.searchPlanets("?"));
+        assertEquals(List.of(), this.searchPlanets("-- ."));
+    }
+
+    @Test
+    void rejectsBlankQueries() throws Exception {
+        mockMvc.perform(get("/planets/search").param("q", "")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/planets/search").param("q", "   ")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/planets/search")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void followsInsertsRenamesAndDeletes() throws Exception {
+        assertEquals(List.of(), this.searchCharacters("revanchist"));
+
+        StarWarsCharacter revan = new StarWarsCharacter("Revanchist", homePlanetId, List.of());
+        starWarsCharacterService.save(revan);
+        assertEquals(List.of("Revanchist"), this.searchCharacters("revanchist"));
+
+        starWarsCharacterService.updateById(revan.getId(), new StarWarsCharacter("Malakovian", homePlanetId, List.of()));
+        assertEquals(List.of(), this.searchCharacters("revanchist"));
+        assertEquals(List.of("Malakovian"), this.searchCharacters("malakov"));
+
+        starWarsCharacterService.deleteById(revan.getId());
+        assertEquals(List.of(), this.searchCharacters("malakov"));
+
+        Planet rakata = new Planet("Rakata Prime", "murky", 10);
+        planetService.save(rakata);
+        assertEquals(List.of("Rakata Prime"), this.searchPlanets("rakata"));
+        planetService.deleteById(rakata.getId());
+        assertEquals(List.of(), this.searchPlanets("rakata"));
+    }
+
+    private List<String> searchPlanets(String query) {
+        return planetService.search(query, PageRequest.of(0, 20)).getContent().stream().map(Planet::getName).toList();
+    }
+
+    private List<String> searchCharacters(String query) {
+        return starWarsCharacterService.search(query, PageRequest.of(0, 20)).getContent().stream().map(StarWarsCharacter::getName).toList();
+    }
+}
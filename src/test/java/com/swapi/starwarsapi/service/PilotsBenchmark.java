@@ -0,0 +1,76 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.EmbeddedApplication;
+import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /starships/{id}/pilots as the number of characters grows while the number of pilots stays the same.
+ * findPilots should stay flat, clientSideFilter is what a client had to do before the endpoint existed and grows with the table
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PilotsBenchmark {
+    private static final int PILOTS = 100;
+
+    @Param({"1000", "10000", "100000"})
+    private int characterCount;
+
+    private ConfigurableApplicationContext context;
+    private StarWarsCharacterService starWarsCharacterService;
+    private int starshipId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = EmbeddedApplication.start();
+        starWarsCharacterService = context.getBean(StarWarsCharacterService.class);
+
+        context.getBean(PlanetService.class).saveAll(List.of(new Planet("planet", "temperate", 1000)));
+        context.getBean(StarshipService.class).saveAll(List.of(
+                new Starship("piloted", "model", 100),
+                new Starship("everyone's", "model", 100)
+        ));
+        starshipId = 1;
+
+        // PILOTS characters spread over the table fly starship 1, all of them fly starship 2
+        int spacing = characterCount / PILOTS;
+        List<StarWarsCharacter> characters = new ArrayList<>(characterCount);
+        for (int i = 0; i < characterCount; i++) {
+            List<Integer> starships = i % spacing == 0 ? List.of(1, 2) : List.of(2);
+            characters.add(new StarWarsCharacter("character " + i, 1, starships));
+        }
+        starWarsCharacterService.saveAll(characters);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<StarWarsCharacter> findPilots() throws ConflictException {
+        return starWarsCharacterService.findByStarshipId(starshipId, PageRequest.of(0, 20, Sort.by("id")));
+    }
+
+    @Benchmark
+    public List<StarWarsCharacter> clientSideFilter() {
+        return starWarsCharacterService.findAll().stream()
+                .filter(character -> character.getStarships().contains(starshipId))
+                .toList();
+    }
+}
@@ -0,0 +1,71 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.EmbeddedApplication;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.repository.StarWarsCharacterRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A large findAll of characters in a read-write transaction, which the service methods used to get from the repository,
+ * against the read-only transaction they run in now. The read-write one snapshots every loaded character and dirty checks them all at commit.
+ * Run it with -prof gc to see the allocation per call (gc.alloc.rate.norm)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadOnlyTransactionBenchmark {
+
+    @Param({"1000", "10000"})
+    private int characterCount;
+
+    private ConfigurableApplicationContext context;
+    private StarWarsCharacterService starWarsCharacterService;
+    private StarWarsCharacterRepository starWarsCharacterRepository;
+    private TransactionTemplate readWrite;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = EmbeddedApplication.start();
+        starWarsCharacterService = context.getBean(StarWarsCharacterService.class);
+        starWarsCharacterRepository = context.getBean(StarWarsCharacterRepository.class);
+        readWrite = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        context.getBean(PlanetService.class).saveAll(List.of(new Planet("planet", "temperate", 1000)));
+        context.getBean(StarshipService.class).saveAll(List.of(
+                new Starship("first", "model", 100),
+                new Starship("second", "model", 100)
+        ));
+        List<StarWarsCharacter> characters = new ArrayList<>(characterCount);
+        for (int i = 0; i < characterCount; i++) {
+            characters.add(new StarWarsCharacter("character " + i, 1, List.of(1, 2)));
+        }
+        starWarsCharacterService.saveAll(characters);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<StarWarsCharacter> readWriteTransaction() {
+        return readWrite.execute(status -> starWarsCharacterRepository.findAll());
+    }
+
+    @Benchmark
+    public List<StarWarsCharacter> readOnlyTransaction() {
+        return starWarsCharacterService.findAll();
+    }
+}
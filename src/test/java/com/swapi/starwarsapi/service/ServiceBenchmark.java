@@ -0,0 +1,119 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.EmbeddedApplication;
+import com.swapi.starwarsapi.dto.ExpandedCharacter;
+import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import org.apache.coyote.BadRequestException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The save and find paths of the services, through the spring proxies (transactions, caches) and against the embedded database.
+ * Absolute numbers are h2's, compare them between versions rather than with postgres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+    private static final int PLANETS = 100;
+    private static final int STARSHIPS = 100;
+    private static final int CHARACTERS = 10000;
+
+    private ConfigurableApplicationContext context;
+    private PlanetService planetService;
+    private StarshipService starshipService;
+    private StarWarsCharacterService starWarsCharacterService;
+
+    // every save needs a fresh name, and the finds walk through the seeded ids
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = EmbeddedApplication.start();
+        planetService = context.getBean(PlanetService.class);
+        starshipService = context.getBean(StarshipService.class);
+        starWarsCharacterService = context.getBean(StarWarsCharacterService.class);
+
+        List<Planet> planets = new ArrayList<>(PLANETS);
+        for (int i = 1; i <= PLANETS; i++) {
+            planets.add(new Planet("planet " + i, "temperate", i * 1000));
+        }
+        planetService.saveAll(planets);
+        List<Starship> starships = new ArrayList<>(STARSHIPS);
+        for (int i = 1; i <= STARSHIPS; i++) {
+            starships.add(new Starship("starship " + i, "model " + i, i * 100.5));
+        }
+        starshipService.saveAll(starships);
+        List<StarWarsCharacter> characters = new ArrayList<>(CHARACTERS);
+        for (int i = 1; i <= CHARACTERS; i++) {
+            characters.add(new StarWarsCharacter("character " + i, i % PLANETS + 1, List.of(i % STARSHIPS + 1, (i + 1) % STARSHIPS + 1)));
+        }
+        starWarsCharacterService.saveAll(characters);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private int nextId(int bound) {
+        return Math.floorMod(sequence.incrementAndGet(), bound) + 1;
+    }
+
+    @Benchmark
+    public void savePlanet() throws ConflictException {
+        planetService.save(new Planet("new planet " + sequence.incrementAndGet(), "arid", 1000));
+    }
+
+    @Benchmark
+    public void saveStarship() throws BadRequestException, ConflictException {
+        starshipService.save(new Starship("new starship " + sequence.incrementAndGet(), "model", 1000.54));
+    }
+
+    @Benchmark
+    public void saveCharacter() throws BadRequestException, ConflictException {
+        starWarsCharacterService.save(new StarWarsCharacter("new character " + sequence.incrementAndGet(), 1, List.of(1, 2)));
+    }
+
+    @Benchmark
+    public Optional<Planet> findPlanetById() {
+        return planetService.findById(this.nextId(PLANETS));
+    }
+
+    @Benchmark
+    public Optional<Starship> findStarshipByName() {
+        return starshipService.findByName("starship " + this.nextId(STARSHIPS));
+    }
+
+    @Benchmark
+    public Optional<StarWarsCharacter> findCharacterById() {
+        return starWarsCharacterService.findById(this.nextId(CHARACTERS));
+    }
+
+    @Benchmark
+    public Page<StarWarsCharacter> findCharacterPage() {
+        return starWarsCharacterService.findAll(PageRequest.of(this.nextId(CHARACTERS / 20) - 1, 20, Sort.by("id")));
+    }
+
+    @Benchmark
+    public List<ExpandedCharacter> findExpandedCharacterPage() throws BadRequestException {
+        Page<StarWarsCharacter> page = starWarsCharacterService.findAll(PageRequest.of(this.nextId(CHARACTERS / 20) - 1, 20, Sort.by("id")));
+        return starWarsCharacterService.expand(page.getContent(), Set.of("homePlanet", "starships"));
+    }
+}
@@ -0,0 +1,195 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.config.DatabaseStatsFilter;
+import com.swapi.starwarsapi.config.RequestDatabaseStats;
+import com.swapi.starwarsapi.dto.ExpandedCharacter;
+import com.swapi.starwarsapi.exceptions.ConflictException;
+import com.swapi.starwarsapi.exceptions.UniqueViolations;
+import com.swapi.starwarsapi.model.CharacterStarship;
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.repository.StarWarsCharacterRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * StarWarsCharacterService on the embedded profile, through the http api where the status code is the behaviour:
+ * what a broken unique constraint, on name or on anything else, and an update of a missing character turn into,
+ * with the X-DB-Queries header of DatabaseStatsFilter counting the statements it took, the order starships are answered in,
+ * the page a list without paging parameters is answered with, and the queries expanding the references takes
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("embedded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StarWarsCharacterServiceTest {
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarshipService starshipService;
+    @Autowired
+    private StarWarsCharacterRepository starWarsCharacterRepository;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private int homePlanetId;
+
+    @BeforeAll
+    void seed() throws Exception {
+        Planet planet = new Planet("character service planet", "arid", 1000);
+        planetService.save(planet);
+        homePlanetId = planet.getId();
+    }
+
+    @Test
+    void duplicateNameIsAConflict() throws Exception {
+        String body = "{\"name\":\"duplicate bossk\",\"homePlanetId\":" + homePlanetId + ",\"starships\":[]}";
+        mockMvc.perform(post("/characters").contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isCreated());
+        mockMvc.perform(post("/characters").contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isConflict());
+
+        // the insert itself is what fails, with the unique_violation SQLSTATE the conflict is recognized by
+        DataIntegrityViolationException violation = assertThrows(DataIntegrityViolationException.class,
+                () -> starWarsCharacterRepository.saveAndFlush(new StarWarsCharacter("duplicate bossk", homePlanetId, List.of())));
+        assertTrue(UniqueViolations.isNameViolation(violation));
+        ConflictException conflict = assertThrows(ConflictException.class,
+                () -> starWarsCharacterService.save(new StarWarsCharacter("duplicate bossk", homePlanetId, List.of())));
+        assertEquals("character with name duplicate bossk already exists", conflict.getMessage());
+    }
+
+    @Test
+    void otherUniqueViolationsAreNotNameConflicts() throws Exception {
+        Starship starship = new Starship("duplicate membership starship", "YT-1300", 100);
+        starshipService.save(starship);
+        StarWarsCharacter character = new StarWarsCharacter("duplicate membership dengar", homePlanetId, List.of(starship.getId()));
+        starWarsCharacterService.save(character);
+
+        // the primary key of character_starship is unique too, but breaking it says nothing about a taken name
+        PersistenceException violation = assertThrows(PersistenceException.class, () -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.persist(new CharacterStarship(character.getId(), starship.getId()));
+            entityManager.flush();
+        }));
+        assertFalse(UniqueViolations.isNameViolation(violation));
+    }
+
+    @Test
+    void starshipsAreAnsweredSortedAndDeduplicated() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Starship starship = new Starship("starship order " + i, "YT-1300", 100);
+            starshipService.save(starship);
+            ids.add(starship.getId());
+        }
+        int first = ids.get(0), second = ids.get(1), third = ids.get(2);
+
+        // part of the api since memberships moved to character_starship: the request's order and repeats are not kept
+        String body = "{\"name\":\"starship order ig-88\",\"homePlanetId\":" + homePlanetId + ",\"starships\":[" + third + "," + first + "," + third + "," + second + "]}";
+        mockMvc.perform(post("/characters").contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isCreated());
+        mockMvc.perform(get("/characters/find").param("name", "starship order ig-88"))
+                .andExpect(jsonPath("$.starships", contains(first, second, third)));
+
+        body = "{\"name\":\"starship order ig-88\",\"homePlanetId\":" + homePlanetId + ",\"starships\":[" + third + "," + first + "]}";
+        mockMvc.perform(put("/characters").contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isOk());
+        mockMvc.perform(get("/characters/find").param("name", "starship order ig-88"))
+                .andExpect(jsonPath("$.starships", contains(first, third)));
+    }
+
+    @Test
+    void listWithoutPagingParametersIsTheFirstPage() throws Exception {
+        // the whole table is only served by /characters/export
+        mockMvc.perform(get("/characters"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page").value(0))
+                .andExpect(jsonPath("$.size").value(20));
+        mockMvc.perform(get("/characters").param("expand", "homePlanet"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page").value(0))
+                .andExpect(jsonPath("$.size").value(20));
+    }
+
+    @Test
+    void updatingAMissingCharacterIsAConflictFromTheUpdateAlone() throws Exception {
+        // missing records are answered with the same 409 the api used before updates counted rows
+        String body = "{\"name\":\"missing greedo\",\"homePlanetId\":" + homePlanetId + ",\"starships\":[]}";
+        mockMvc.perform(put("/characters/999999").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isConflict())
+                // the update is the only statement, no select looks the character up first
+                .andExpect(header().string(DatabaseStatsFilter.QUERIES_HEADER, "1"));
+        mockMvc.perform(put("/characters").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isConflict())
+                .andExpect(header().string(DatabaseStatsFilter.QUERIES_HEADER, "1"));
+
+        ConflictException conflict = assertThrows(ConflictException.class,
+                () -> starWarsCharacterService.updateById(999999, new StarWarsCharacter("missing greedo", homePlanetId, List.of())));
+        assertEquals("character with id 999999 does not exist", conflict.getMessage());
+    }
+
+    @Test
+    void expandingTakesOnePlanetAndOneStarshipQuery() throws Exception {
+        List<Integer> planets = new ArrayList<>();
+        List<Integer> starships = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Planet planet = new Planet("expand planet " + i, "arid", 1000);
+            planetService.save(planet);
+            planets.add(planet.getId());
+            Starship starship = new Starship("expand starship " + i, "YT-1300", 100);
+            starshipService.save(starship);
+            starships.add(starship.getId());
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            StarWarsCharacter character = new StarWarsCharacter("expand character " + i, planets.get(i % 4),
+                    List.of(starships.get(i % 4), starships.get((i + 1) % 4)));
+            starWarsCharacterService.save(character);
+            ids.add(character.getId());
+        }
+
+        for (int count : new int[]{1, 40}) {
+            List<StarWarsCharacter> characters = starWarsCharacterRepository.findAllById(ids.subList(0, count));
+            RequestDatabaseStats stats = RequestDatabaseStats.start(Duration.ofMinutes(1));
+            List<ExpandedCharacter> expanded;
+            try {
+                expanded = starWarsCharacterService.expand(characters, Set.of("homePlanet", "starships"));
+            } finally {
+                RequestDatabaseStats.finish();
+            }
+
+            assertEquals(2, stats.getStatements(), () -> count + " characters");
+            assertEquals(count, expanded.size());
+            assertTrue(expanded.stream().allMatch(character -> character.homePlanet() != null && character.starships().size() == 2));
+        }
+    }
+}
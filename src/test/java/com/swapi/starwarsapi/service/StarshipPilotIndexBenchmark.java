@@ -0,0 +1,53 @@
+package com.swapi.starwarsapi.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /characters/query endpoints as answered by StarshipPilotIndex, which never touches the database.
+ * Each character flies 5 of 1000 starships, so a starship has characterCount / 200 pilots
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarshipPilotIndexBenchmark {
+    private static final int STARSHIPS = 1000;
+
+    @Param({"10000", "1000000"})
+    private int characterCount;
+
+    private StarshipPilotIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // outside of a transaction the index applies writes right away, so it is filled without the application
+        index = new StarshipPilotIndex();
+        for (int character = 1; character <= characterCount; character++) {
+            int first = character % STARSHIPS;
+            index.add(character, List.of(first + 1, (first + 7) % STARSHIPS + 1, (first + 31) % STARSHIPS + 1,
+                    (first + 127) % STARSHIPS + 1, (first + 503) % STARSHIPS + 1));
+        }
+    }
+
+    @Benchmark
+    public int[] flyingAll() {
+        // starships 1 and 8 share every pilot whose first starship is 1
+        return index.flyingAll(List.of(1, 8));
+    }
+
+    @Benchmark
+    public int[] flyingAny() {
+        return index.flyingAny(List.of(1, 2, 3));
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> pilotCounts() {
+        return index.pilotCounts(List.of());
+    }
+}
@@ -0,0 +1,200 @@
+package com.swapi.starwarsapi.service;
+
+import com.swapi.starwarsapi.model.Planet;
+import com.swapi.starwarsapi.model.StarWarsCharacter;
+import com.swapi.starwarsapi.model.Starship;
+import com.swapi.starwarsapi.repository.CharacterStarshipRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+/**
+ * StarshipPilotIndex against the in-memory database of the embedded profile: the set questions it answers,
+ * writes going through the services the way requests make them, committed or rolled back,
+ * writes going around them straight to character_starship the way another instance would, and writes landing during a rebuild.
+ * Every test flies its own starships, so the answers don't depend on the other tests
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = "app.pilot-index.refresh-interval=PT1H")
+@ActiveProfiles("embedded")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StarshipPilotIndexTest {
+    private int homePlanetId;
+    private int falcon;
+    private int xWing;
+
+    @Autowired
+    private StarshipPilotIndex starshipPilotIndex;
+    @Autowired
+    private StarWarsCharacterService starWarsCharacterService;
+    @Autowired
+    private PlanetService planetService;
+    @Autowired
+    private StarshipService starshipService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @SpyBean
+    private CharacterStarshipRepository characterStarshipRepository;
+
+    @BeforeAll
+    void seed() throws Exception {
+        Planet planet = new Planet("pilot index planet", "arid", 200000);
+        planetService.save(planet);
+        homePlanetId = planet.getId();
+        falcon = this.starship("pilot index falcon");
+        xWing = this.starship("pilot index x-wing");
+        // the index picks up the seeding through the services, refreshing now only settles a rebuild of earlier test data
+        starshipPilotIndex.refresh();
+    }
+
+    @Test
+    void answersSetQuestions() throws Exception {
+        int falcon = this.starship("set falcon");
+        int xWing = this.starship("set x-wing");
+        int yWing = this.starship("set y-wing");
+        int luke = this.character("set luke", falcon, xWing).getId();
+        int han = this.character("set han", falcon).getId();
+        int wedge = this.character("set wedge", yWing, xWing).getId();
+        int unknown = yWing + 1000;
+
+        assertArrayEquals(new int[]{luke}, starshipPilotIndex.flyingAll(List.of(falcon, xWing)));
+        assertArrayEquals(new int[]{luke, wedge}, starshipPilotIndex.flyingAll(List.of(xWing)));
+        assertArrayEquals(new int[0], starshipPilotIndex.flyingAll(List.of(falcon, unknown)));
+        assertArrayEquals(new int[]{luke, han, wedge}, starshipPilotIndex.flyingAny(List.of(yWing, falcon, unknown)));
+        assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(unknown)));
+        assertEquals(Map.of(falcon, 2, xWing, 2, yWing, 1, unknown, 0), starshipPilotIndex.pilotCounts(List.of(unknown, yWing, xWing, falcon)));
+        assertEquals(List.of(falcon, xWing, yWing), List.copyOf(starshipPilotIndex.pilotCounts(List.of(yWing, falcon, xWing)).keySet()));
+        assertEquals(2, starshipPilotIndex.pilotCounts(List.of()).get(falcon));
+    }
+
+    @Test
+    void appliesWritesOnlyOnceTheyCommit() throws Exception {
+        int falcon = this.starship("commit falcon");
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            this.character("rolled back chewie", falcon);
+            assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(falcon)));
+            status.setRollbackOnly();
+        });
+        assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(falcon)));
+
+        StarWarsCharacter[] committed = new StarWarsCharacter[1];
+        transaction.executeWithoutResult(status -> {
+            committed[0] = this.character("committed chewie", falcon);
+            assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(falcon)));
+        });
+        assertArrayEquals(new int[]{committed[0].getId()}, starshipPilotIndex.flyingAny(List.of(falcon)));
+        assertFalse(starshipPilotIndex.refresh());
+    }
+
+    @Test
+    void dropsADeletedStarshipAfterTheCascade() throws Exception {
+        int falcon = this.starship("cascade falcon");
+        int xWing = this.starship("cascade x-wing");
+        StarWarsCharacter luke = this.character("cascade luke", falcon, xWing);
+
+        starshipService.deleteById(falcon);
+
+        assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(falcon)));
+        assertFalse(starshipPilotIndex.pilotCounts(List.of()).containsKey(falcon));
+        assertArrayEquals(new int[]{luke.getId()}, starshipPilotIndex.flyingAll(List.of(xWing)));
+        assertEquals(List.of(xWing), starWarsCharacterService.findById(luke.getId()).orElseThrow().getStarships());
+        // the database cascaded the memberships away the same way the index dropped them
+        assertFalse(starshipPilotIndex.refresh());
+    }
+
+    @Test
+    void localWritesDontRebuild() throws Exception {
+        StarWarsCharacter luke = this.character("pilot index luke", falcon, xWing);
+        starWarsCharacterService.updateById(luke.getId(), new StarWarsCharacter(luke.getName(), homePlanetId, List.of(xWing)));
+        StarWarsCharacter han = this.character("pilot index han", falcon);
+        starWarsCharacterService.deleteById(han.getId());
+        int tie = this.starship("pilot index tie");
+        this.character("pilot index vader", tie);
+        starshipService.deleteById(tie);
+
+        assertFalse(starshipPilotIndex.refresh());
+        assertArrayEquals(new int[]{luke.getId()}, starshipPilotIndex.flyingAny(List.of(xWing)));
+    }
+
+    @Test
+    void externalInsertRebuilds() throws Exception {
+        StarWarsCharacter lando = this.character("pilot index lando");
+        jdbcTemplate.update("insert into character_starship(character_id, starship_id) values (?, ?)", lando.getId(), falcon);
+
+        assertTrue(starshipPilotIndex.refresh());
+        assertTrue(Arrays.stream(starshipPilotIndex.flyingAny(List.of(falcon))).anyMatch(id -> id == lando.getId()));
+        assertFalse(starshipPilotIndex.refresh());
+    }
+
+    @Test
+    void externalDeleteRebuilds() throws Exception {
+        int falcon = this.starship("external delete falcon");
+        this.character("external delete han", falcon);
+        jdbcTemplate.update("delete from character_starship where starship_id = ?", falcon);
+
+        assertTrue(starshipPilotIndex.refresh());
+        assertArrayEquals(new int[0], starshipPilotIndex.flyingAny(List.of(falcon)));
+    }
+
+    @Test
+    void keepsWritesCommittedDuringARebuild() throws Exception {
+        int falcon = this.starship("rebuild falcon");
+        StarWarsCharacter han = this.character("rebuild han", falcon);
+        StarWarsCharacter[] chewie = new StarWarsCharacter[1];
+        // the writes commit once the scan has read its first row, from another thread like a request would.
+        // The repository is an interface proxy with no real method to call, the spy's default answer delegates to it
+        Answer<?> scanning = mockingDetails(characterStarshipRepository).getMockCreationSettings().getDefaultAnswer();
+        AtomicBoolean written = new AtomicBoolean();
+        doAnswer(invocation -> ((Stream<?>) scanning.answer(invocation)).peek(membership -> {
+            if (written.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(() -> {
+                    chewie[0] = this.character("rebuild chewie", falcon);
+                    starWarsCharacterService.deleteById(han.getId());
+                }).join();
+            }
+        })).doAnswer(scanning).when(characterStarshipRepository).streamAllIds();
+
+        starshipPilotIndex.rebuild();
+
+        assertArrayEquals(new int[]{chewie[0].getId()}, starshipPilotIndex.flyingAny(List.of(falcon)));
+        assertFalse(starshipPilotIndex.refresh());
+    }
+
+    private int starship(String name) throws Exception {
+        Starship starship = new Starship(name, "YT-1300", 100);
+        starshipService.save(starship);
+        return starship.getId();
+    }
+
+    private StarWarsCharacter character(String name, Integer... starships) {
+        StarWarsCharacter character = new StarWarsCharacter(name, homePlanetId, List.of(starships));
+        try {
+            starWarsCharacterService.save(character);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return character;
+    }
+}
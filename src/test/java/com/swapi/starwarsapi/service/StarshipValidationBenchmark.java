@@ -0,0 +1,34 @@
+package com.swapi.starwarsapi.service;
+
+import org.apache.coyote.BadRequestException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StarshipService.validateCostInCredits, which runs on every starship create and update.
+ * The last cost has too many decimals, so that case measures the rejection, exception included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarshipValidationBenchmark {
+    @Param({"10000", "1000000.54", "99.999"})
+    private double costInCredits;
+
+    // validateCostInCredits doesn't touch the repositories, so the service needs no context
+    private final StarshipService starshipService = new StarshipService();
+
+    @Benchmark
+    public boolean validateCostInCredits() {
+        try {
+            starshipService.validateCostInCredits(costInCredits);
+            return true;
+        } catch (BadRequestException e) {
+            return false;
+        }
+    }
+}